@@ -0,0 +1,109 @@
+#!/usr/bin/env bash
+#
+# Compares the standard build of the service with the fast-startup one (Spring AOT + CDS archive):
+# time until GET /api/users/startup-probe is served through the proxy with the probe user, and
+# resident memory of the JVM at that point. Median of RUNS starts of each.
+#
+# The probe user is registered once by a first start of the standard build, the proxy keeps it across
+# the restarts of the service.
+#
+# Needs the proxy running on its own:   docker compose up -d kalix-proxy
+# Then from the project root:           scripts/startup-benchmark.sh
+#
+# RUNS (default 5) and PROXY_URL (default http://localhost:9000) can be set in the environment.
+
+set -euo pipefail
+
+RUNS=${RUNS:-5}
+PROXY_URL=${PROXY_URL:-http://localhost:9000}
+PROBE="$PROXY_URL/api/users/startup-probe"
+PROBE_USER='{"name":"Startup Probe","country":"Belgium","email":"startup-probe@acme.com"}'
+FAST=target/fast-startup
+ARCHIVE=$FAST/app.jsa
+
+log() { echo "[startup-benchmark] $*" >&2; }
+
+now_ms() { date +%s%3N; }
+
+# succeeds when the probe is answered with a 200 and the probe user
+probe_served() {
+  local body
+  body=$(curl -s -f "$PROBE" || true)
+  [[ "$body" == *'"name":"Startup Probe"'* ]]
+}
+
+ensure_running() {
+  if ! kill -0 "$1" 2> /dev/null; then
+    log "service exited, see target/startup-benchmark.log"
+    exit 1
+  fi
+}
+
+# starts the given command in the background and registers the probe user unless it's there already,
+# then stops the service
+create_probe() {
+  local pid
+  "$@" > target/startup-benchmark.log 2>&1 &
+  pid=$!
+
+  until probe_served; do
+    ensure_running "$pid"
+    # refused while the workflow of a previous attempt is running, the user shows up once it's done
+    curl -s -o /dev/null -X POST -H 'Content-Type: application/json' -d "$PROBE_USER" "$PROBE" || true
+    sleep 0.5
+  done
+
+  kill -TERM "$pid"
+  wait "$pid" 2> /dev/null || true
+}
+
+# starts the given command in the background, waits until the probe is served and prints
+# "<millis> <rss kb>", then stops the service
+measure() {
+  local start pid elapsed rss
+  start=$(now_ms)
+  "$@" > target/startup-benchmark.log 2>&1 &
+  pid=$!
+
+  until probe_served; do
+    ensure_running "$pid"
+    sleep 0.05
+  done
+
+  elapsed=$(( $(now_ms) - start ))
+  rss=$(ps -o rss= -p "$pid" | tr -d ' ')
+  kill -TERM "$pid"
+  wait "$pid" 2> /dev/null || true
+  echo "$elapsed $rss"
+}
+
+median() { sort -n | awk '{ v[NR] = $1 } END { print v[int((NR + 1) / 2)] }'; }
+
+run() {
+  local name=$1; shift
+  local times=() rss=()
+  for i in $(seq "$RUNS"); do
+    read -r t r < <(measure "$@")
+    log "$name run $i: ${t}ms, ${r}kB"
+    times+=("$t"); rss+=("$r")
+  done
+  printf '%-14s first GET %6sms   RSS %8skB\n' "$name" \
+    "$(printf '%s\n' "${times[@]}" | median)" \
+    "$(printf '%s\n' "${rss[@]}" | median)"
+}
+
+log "building the standard and fast-startup artifacts"
+mvn -B -q clean package -Pfast-startup -DskipTests
+
+# the class path must be the same when creating and using the archive
+CLASSPATH=$(ls $FAST/*-app.jar)$(ls $FAST/lib/*.jar | sort | sed 's/^/:/' | tr -d '\n')
+STANDARD_JAR=$(ls target/*.jar | grep -v -- '-app.jar' | head -1)
+
+log "registering the probe user"
+create_probe java -jar "$STANDARD_JAR"
+
+log "training run, writing the CDS archive to $ARCHIVE"
+measure java -XX:ArchiveClassesAtExit="$ARCHIVE" -Dspring.aot.enabled=true -cp "$CLASSPATH" user.registry.Main > /dev/null
+
+run standard java -jar "$STANDARD_JAR"
+run fast-startup java -XX:SharedArchiveFile="$ARCHIVE" -Dspring.aot.enabled=true -cp "$CLASSPATH" user.registry.Main
@@ -0,0 +1,268 @@
+package user.registry.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Load harness for the registration saga, run against a running service and proxy, e.g. started with
+ * `mvn kalix:runAll`:
+ * <pre>
+ *   mvn verify -Pload -Dload.users=2000 -Dload.hotEmails=20 -Dload.changes=500
+ * </pre>
+ * Properties:
+ * <ul>
+ *   <li>load.baseUrl: proxy address, http://localhost:9000 by default</li>
+ *   <li>load.runId: prefix of all user ids and emails, reuse it to resume a run, the workflow starts are idempotent</li>
+ *   <li>load.users: number of registrations with a unique email</li>
+ *   <li>load.hotEmails / load.racersPerEmail: registrations racing for the same few addresses</li>
+ *   <li>load.changes: change-email requests on the users registered with a unique email</li>
+ *   <li>load.concurrency: requests in flight</li>
+ *   <li>load.countries: comma separated countries the users are spread over, so that the per-country
+ *   admission limit doesn't throttle the harness</li>
+ * </ul>
+ * Reports throughput and start to final status latency percentiles, and fails if an address contested
+ * by several users doesn't end up with exactly one owner, or if an email change fails. The final
+ * status is read from the status stream of the workflow. Starts refused by the service are reported as
+ * THROTTLED (429) or REJECTED.
+ */
+public class RegistrationLoadTest {
+
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+  private final String baseUrl = System.getProperty("load.baseUrl", "http://localhost:9000");
+  private final String runId = System.getProperty("load.runId", UUID.randomUUID().toString().substring(0, 8));
+  private final int users = Integer.getInteger("load.users", 200);
+  private final int hotEmails = Integer.getInteger("load.hotEmails", 5);
+  private final int racersPerEmail = Integer.getInteger("load.racersPerEmail", 10);
+  private final int changes = Integer.getInteger("load.changes", 50);
+  private final int concurrency = Integer.getInteger("load.concurrency", 32);
+  private final Duration awaitTimeout = Duration.ofSeconds(Long.getLong("load.awaitTimeoutSeconds", 60));
+  private final List<String> countries =
+    List.of(System.getProperty("load.countries", "Belgium,France,Germany,Italy,Netherlands,Poland,Portugal,Spain").split(","));
+
+  private final AtomicInteger failedChanges = new AtomicInteger();
+
+  private record Registration(String userId, String email) {}
+
+  private record Outcome(Registration registration, String status, long latencyMillis) {}
+
+  @Test
+  public void registrationLoad() throws Exception {
+    logger.info("Load run '{}' against {}", runId, baseUrl);
+
+    var unique = IntStream.range(0, users)
+      .mapToObj(i -> new Registration(runId + "-u" + i, runId + "-u" + i + "@load.acme.com"))
+      .toList();
+
+    var racers = new ArrayList<Registration>();
+    for (int e = 0; e < hotEmails; e++) {
+      for (int r = 0; r < racersPerEmail; r++) {
+        racers.add(new Registration(runId + "-h" + e + "-" + r, runId + "-hot" + e + "@load.acme.com"));
+      }
+    }
+    // interleave racers so they really compete
+    Collections.shuffle(racers, new Random(runId.hashCode()));
+
+    var all = new ArrayList<Registration>(unique);
+    all.addAll(racers);
+
+    var pool = Executors.newFixedThreadPool(concurrency);
+    try {
+      var started = System.nanoTime();
+      var outcomes = runAll(pool, all.stream().map(reg -> (Callable<Outcome>) () -> register(reg)).toList());
+      report("registrations", outcomes.stream().map(Outcome::latencyMillis).toList(), started);
+
+      var byStatus = new TreeMap<String, Integer>();
+      outcomes.forEach(outcome -> byStatus.merge(outcome.status(), 1, Integer::sum));
+      logger.info("Final statuses: {}", byStatus);
+
+      var churnStarted = System.nanoTime();
+      var random = new Random(runId.hashCode());
+      var churn = IntStream.range(0, Math.min(changes, unique.size() * 10))
+        .mapToObj(i -> {
+          var user = unique.get(random.nextInt(unique.size()));
+          return (Callable<Long>) () -> changeEmail(user.userId(), runId + "-c" + i + "@load.acme.com");
+        })
+        .toList();
+      report("email changes", runAll(pool, churn), churnStarted);
+
+      assertEquals(0, failedChanges.get());
+      assertEquals(List.of(), contentionViolations(outcomes));
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private Outcome register(Registration reg) throws Exception {
+    var started = System.nanoTime();
+    var country = countries.get(Math.floorMod(reg.userId().hashCode(), countries.size())).trim();
+    var body = Map.of("name", "Load " + reg.userId(), "country", country, "email", reg.email());
+    var response = request("POST", "/api/users/" + reg.userId(), body);
+
+    if (response.statusCode() >= 300) {
+      // e.g. a racer turned down because the address is known to be taken, or the service is too busy
+      logger.debug("Start of '{}' refused with {}: {}", reg.userId(), response.statusCode(), response.body());
+      var status = response.statusCode() == 429 ? "THROTTLED" : "REJECTED";
+      return new Outcome(reg, status, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    var status = awaitFinalStatus(reg.userId(), started + awaitTimeout.toNanos());
+    return new Outcome(reg, status, (System.nanoTime() - started) / 1_000_000);
+  }
+
+  /**
+   * Follows the status stream of the workflow, opening it again if it ends before a final status.
+   */
+  private String awaitFinalStatus(String userId, long deadline) throws Exception {
+    while (System.nanoTime() < deadline) {
+      var request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/users/" + userId + "/creation-workflow/stream"))
+        .timeout(Duration.ofNanos(deadline - System.nanoTime()))
+        .header("Accept", "text/event-stream")
+        .GET()
+        .build();
+
+      HttpResponse<Stream<String>> response;
+      try {
+        response = http.send(request, HttpResponse.BodyHandlers.ofLines());
+      } catch (HttpTimeoutException e) {
+        break;
+      }
+
+      if (response.statusCode() >= 300) {
+        response.body().close();
+        Thread.sleep(100);
+        continue;
+      }
+      try (var lines = response.body()) {
+        var status = lines
+          // server-sent events carry the state in their data lines
+          .map(line -> line.startsWith("data:") ? line.substring(5).trim() : line.trim())
+          .filter(line -> line.startsWith("{"))
+          .map(this::statusOf)
+          .filter(RegistrationLoadTest::isFinal)
+          .findFirst();
+        if (status.isPresent()) return status.get();
+      }
+    }
+    return "TIMED_OUT";
+  }
+
+  private String statusOf(String state) {
+    try {
+      return mapper.readTree(state).path("status").asText();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static boolean isFinal(String status) {
+    return status.equals("FINISHED") || status.equals("PAUSED") || status.equals("FAILED");
+  }
+
+  private long changeEmail(String userId, String newEmail) throws Exception {
+    var started = System.nanoTime();
+    var response = request("PUT", "/api/users/" + userId + "/change-email", Map.of("newEmail", newEmail));
+    // users whose registration didn't finish can't change their email, anything else is a failure
+    if (response.statusCode() >= 300 && response.statusCode() != 404) {
+      logger.warn("Email change of '{}' failed with {}: {}", userId, response.statusCode(), response.body());
+      failedChanges.incrementAndGet();
+    }
+    return (System.nanoTime() - started) / 1_000_000;
+  }
+
+  /**
+   * Every contested address must have finished for exactly one racer, and be confirmed for that one.
+   */
+  private List<String> contentionViolations(List<Outcome> outcomes) throws Exception {
+    var violations = new ArrayList<String>();
+    var winners = new HashMap<String, List<String>>();
+    outcomes.stream()
+      .filter(outcome -> outcome.registration().email().contains("-hot"))
+      .forEach(outcome -> {
+        var owners = winners.computeIfAbsent(outcome.registration().email(), __ -> new ArrayList<>());
+        if (outcome.status().equals("FINISHED")) owners.add(outcome.registration().userId());
+      });
+
+    for (var entry : winners.entrySet()) {
+      if (entry.getValue().size() != 1) {
+        violations.add(entry.getKey() + " finished for " + entry.getValue());
+        continue;
+      }
+      var email = send("GET", "/api/emails/" + entry.getKey(), null);
+      var owner = email.path("ownerId").asText();
+      if (!email.path("status").asText().equals("CONFIRMED") || !owner.equals(entry.getValue().get(0))) {
+        violations.add(entry.getKey() + " is " + email + " but finished for " + entry.getValue().get(0));
+      }
+    }
+    return violations;
+  }
+
+  private JsonNode send(String method, String path, Object body) throws Exception {
+    var response = request(method, path, body);
+    if (response.statusCode() >= 300) {
+      // a lost race is an expected error, the workflow state tells the outcome
+      return mapper.createObjectNode().put("error", response.body());
+    }
+    return mapper.readTree(response.body());
+  }
+
+  private HttpResponse<String> request(String method, String path, Object body) throws Exception {
+    var request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+      .timeout(Duration.ofSeconds(30))
+      .header("Content-Type", "application/json")
+      .method(method, body == null
+        ? HttpRequest.BodyPublishers.noBody()
+        : HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(body)))
+      .build();
+
+    return http.send(request, HttpResponse.BodyHandlers.ofString());
+  }
+
+  private <T> List<T> runAll(ExecutorService pool, List<Callable<T>> tasks) throws Exception {
+    var results = new ArrayList<T>();
+    for (var future : pool.invokeAll(tasks)) {
+      results.add(future.get());
+    }
+    return results;
+  }
+
+  private void report(String name, List<Long> latencies, long startedNanos) {
+    var elapsedSeconds = (System.nanoTime() - startedNanos) / 1e9;
+    var sorted = latencies.stream().sorted().toList();
+    logger.info("{}: {} in {}s, {} per second, latency ms p50={} p95={} p99={} max={}",
+      name,
+      sorted.size(),
+      String.format("%.1f", elapsedSeconds),
+      String.format("%.1f", sorted.size() / elapsedSeconds),
+      percentile(sorted, 0.50),
+      percentile(sorted, 0.95),
+      percentile(sorted, 0.99),
+      sorted.isEmpty() ? 0 : sorted.get(sorted.size() - 1));
+  }
+
+  private static long percentile(List<Long> sorted, double p) {
+    if (sorted.isEmpty()) return 0;
+    return sorted.get((int) Math.min(sorted.size() - 1, Math.ceil(p * sorted.size()) - 1));
+  }
+}
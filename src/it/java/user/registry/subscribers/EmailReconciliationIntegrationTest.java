@@ -0,0 +1,118 @@
+package user.registry.subscribers;
+
+import kalix.spring.testkit.KalixIntegrationTestKitSupport;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import user.registry.Main;
+import user.registry.api.workflows.UserCreationWorkflow;
+import user.registry.entities.UniqueEmailEntity;
+import user.registry.entities.UserEntity;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Runs EmailReconciliation against the entities, with the Kalix proxy started by the testkit.
+ * Run with `mvn verify -Pit`.
+ */
+@SpringBootTest(classes = Main.class)
+public class EmailReconciliationIntegrationTest extends KalixIntegrationTestKitSupport {
+
+  private final Duration awaitTimeout = Duration.ofSeconds(10);
+
+  @Test
+  public void assignNewAddressAndReleaseOldOne() throws Exception {
+    register("rec-001", "rec-001@acme.com");
+
+    changeEmail("rec-001", "rec-001.new@acme.com");
+
+    var assigned = awaitEmail("rec-001.new@acme.com", email -> email.status() == UniqueEmailEntity.Status.CONFIRMED);
+    assertEquals(Optional.of("rec-001"), assigned.ownerId());
+    awaitEmail("rec-001@acme.com", email -> email.status() == UniqueEmailEntity.Status.NOT_USED);
+  }
+
+  @Test
+  public void revertChangeToAddressOfSomeoneElse() throws Exception {
+    register("rec-002", "rec-002@acme.com");
+    register("rec-003", "rec-003@acme.com");
+
+    changeEmail("rec-002", "rec-003@acme.com");
+
+    // the address stays with its owner, the user is changed back and keeps its previous address
+    await(() -> getUser("rec-002"), user -> user.email().equals("rec-002@acme.com"));
+    var taken = getEmail("rec-003@acme.com");
+    assertEquals(Optional.of("rec-003"), taken.ownerId());
+    assertEquals(UniqueEmailEntity.Status.CONFIRMED, taken.status());
+
+    // the address the user is back to ends up confirmed for it, even if it was released in between
+    var previous = awaitEmail("rec-002@acme.com", email -> email.status() == UniqueEmailEntity.Status.CONFIRMED);
+    assertEquals(Optional.of("rec-002"), previous.ownerId());
+  }
+
+  private void register(String userId, String email) throws Exception {
+    get(componentClient.forWorkflow(userId)
+      .call(UserCreationWorkflow::start)
+      .params(userId, new UserEntity.Create("User " + userId, "Belgium", email))
+      .execute());
+
+    await(() ->
+        componentClient.forWorkflow(userId)
+          .call(UserCreationWorkflow::getState)
+          .execute(),
+      state -> state.status() == UserCreationWorkflow.Status.FINISHED);
+  }
+
+  private void changeEmail(String userId, String newEmail) throws Exception {
+    get(componentClient.forEventSourcedEntity(userId)
+      .call(UserEntity::changeEmail)
+      .params(new UserEntity.ChangeEmail(newEmail))
+      .execute());
+  }
+
+  private CompletionStage<UserEntity.User> getUser(String userId) {
+    return componentClient.forEventSourcedEntity(userId)
+      .call(UserEntity::getState)
+      .execute();
+  }
+
+  private UniqueEmailEntity.UniqueEmail getEmail(String address) throws Exception {
+    return get(componentClient.forValueEntity(address)
+      .call(UniqueEmailEntity::getState)
+      .execute());
+  }
+
+  private UniqueEmailEntity.UniqueEmail awaitEmail(String address, Predicate<UniqueEmailEntity.UniqueEmail> condition) throws Exception {
+    return await(() ->
+        componentClient.forValueEntity(address)
+          .call(UniqueEmailEntity::getState)
+          .execute(),
+      condition);
+  }
+
+  /**
+   * The reconciliation runs asynchronously, polls until the condition holds.
+   */
+  private <T> T await(Supplier<CompletionStage<T>> call, Predicate<T> condition) throws Exception {
+    var deadline = Instant.now().plus(awaitTimeout);
+    T last = null;
+    while (Instant.now().isBefore(deadline)) {
+      last = get(call.get());
+      if (condition.test(last)) return last;
+      Thread.sleep(200);
+    }
+    fail("Condition not met within " + awaitTimeout + ", last value: " + last);
+    return last;
+  }
+
+  private <T> T get(CompletionStage<T> stage) throws Exception {
+    return stage.toCompletableFuture().get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+  }
+}
@@ -0,0 +1,74 @@
+package user.registry.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import kalix.javasdk.JsonSupport;
+import org.openjdk.jmh.annotations.*;
+import user.registry.api.workflows.UserCreationWorkflow;
+import user.registry.entities.UniqueEmailEntity;
+import user.registry.entities.UserEntity;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson round trips of the workflow state, the email state and the user events, using the same
+ * ObjectMapper Kalix uses to persist them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+  private final ObjectMapper mapper = JsonSupport.getObjectMapper();
+
+  private final UserCreationWorkflow.State workflowState =
+    new UserCreationWorkflow.State(
+      "001",
+      new UserEntity.Create("John Doe", "Belgium", "doe@acme.com"),
+      UserCreationWorkflow.Status.CREATING_USER,
+      Optional.empty(),
+      Instant.parse("2023-06-01T10:15:30Z"),
+      Optional.empty(),
+      Optional.empty());
+
+  private final UniqueEmailEntity.UniqueEmail uniqueEmail =
+    new UniqueEmailEntity.UniqueEmail("doe@acme.com", UniqueEmailEntity.Status.RESERVED, Optional.of("001"), Optional.of(Instant.parse("2023-06-01T10:15:30Z")));
+
+  private final UserEntity.UserWasCreated userWasCreated = new UserEntity.UserWasCreated("John Doe", "Belgium", "doe@acme.com");
+  private final UserEntity.EmailAssigned emailAssigned = new UserEntity.EmailAssigned("john.doe@acme.com", Optional.of("doe@acme.com"));
+  private final UserEntity.EmailUnassigned emailUnassigned = new UserEntity.EmailUnassigned("doe@acme.com");
+
+  private <T> T roundTrip(T value, Class<T> type) throws IOException {
+    return mapper.readValue(mapper.writeValueAsBytes(value), type);
+  }
+
+  @Benchmark
+  public UserCreationWorkflow.State workflowState() throws IOException {
+    return roundTrip(workflowState, UserCreationWorkflow.State.class);
+  }
+
+  @Benchmark
+  public UniqueEmailEntity.UniqueEmail uniqueEmail() throws IOException {
+    return roundTrip(uniqueEmail, UniqueEmailEntity.UniqueEmail.class);
+  }
+
+  @Benchmark
+  public UserEntity.UserWasCreated userWasCreated() throws IOException {
+    return roundTrip(userWasCreated, UserEntity.UserWasCreated.class);
+  }
+
+  @Benchmark
+  public UserEntity.EmailAssigned emailAssigned() throws IOException {
+    return roundTrip(emailAssigned, UserEntity.EmailAssigned.class);
+  }
+
+  @Benchmark
+  public UserEntity.EmailUnassigned emailUnassigned() throws IOException {
+    return roundTrip(emailUnassigned, UserEntity.EmailUnassigned.class);
+  }
+}
@@ -0,0 +1,94 @@
+package user.registry.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import kalix.javasdk.JsonSupport;
+import user.registry.api.workflows.UserCreationWorkflow;
+import user.registry.entities.UserEntity;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static user.registry.api.workflows.UserCreationWorkflow.Status.*;
+
+/**
+ * Reports the bytes persisted per workflow transition and per user event, with the encoding of the
+ * first version of the registry and with the current one. Both are written with the Kalix
+ * ObjectMapper, the first version is reproduced by records of the same shape as its state and events.
+ * <p>
+ * The current state has more fields (start time, trace), it's reported with absent values left out
+ * and with 'user-registry.workflow.compact-state' on, dropping the user details once the user is
+ * created.
+ * <p>
+ * Run with: mvn -Pjmh test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=user.registry.benchmarks.SerializedSizeReport
+ */
+public class SerializedSizeReport {
+
+  // the workflow state and the events of the first version, without any annotation
+  private record FirstCreate(String name, String country, String email) {}
+
+  private record FirstState(String userId, FirstCreate createCmd, UserCreationWorkflow.Status status, Optional<String> errorMessage) {}
+
+  private record FirstEmailAssigned(String newEmail) {}
+
+  public static void main(String[] args) throws JsonProcessingException {
+    var mapper = JsonSupport.getObjectMapper();
+
+    var userId = "5b1d5c1e-8b1f-4c7a-9d1e-2f3a4b5c6d7e";
+    var firstCmd = new FirstCreate("John Doe", "Belgium", "john.doe@acme.com");
+    var firstTransitions = List.of(
+      new FirstState(userId, firstCmd, RESERVING_EMAIL, Optional.empty()),
+      new FirstState(userId, firstCmd, CREATING_USER, Optional.empty()),
+      new FirstState(userId, firstCmd, CONFIRMING_EMAIL, Optional.empty()),
+      new FirstState(userId, firstCmd, FINISHED, Optional.empty()));
+
+    var initial =
+      new UserCreationWorkflow.State(
+        userId,
+        new UserEntity.Create("John Doe", "Belgium", "john.doe@acme.com"),
+        RESERVING_EMAIL,
+        Optional.empty(),
+        Instant.parse("2023-06-01T10:15:30Z"),
+        Optional.empty(),
+        Optional.empty());
+
+    var created = initial.withoutUserDetails();
+    var currentTransitions = List.of(
+      initial,
+      initial.withStatus(CREATING_USER),
+      created.withStatus(CONFIRMING_EMAIL),
+      created.withStatus(FINISHED));
+
+    System.out.printf("workflow state, bytes per transition: first version %.1f, current %.1f%n",
+      average(mapper, firstTransitions), average(mapper, currentTransitions));
+
+    // UserWasCreated and EmailUnassigned keep the shape of the first version, existing journals must
+    // stay readable. EmailAssigned gained the previous email.
+    var events = List.of(
+      List.of(
+        new UserEntity.UserWasCreated("John Doe", "Belgium", "john.doe@acme.com"),
+        new UserEntity.UserWasCreated("John Doe", "Belgium", "john.doe@acme.com")),
+      List.of(
+        new FirstEmailAssigned("john.doe@acme.com"),
+        new UserEntity.EmailAssigned("john.doe@acme.com", Optional.of("doe@acme.com"))),
+      List.of(
+        new UserEntity.EmailUnassigned("doe@acme.com"),
+        new UserEntity.EmailUnassigned("doe@acme.com")));
+
+    for (var event : events) {
+      System.out.printf("%s, bytes per event: first version %d, current %d%n",
+        event.get(1).getClass().getSimpleName(),
+        mapper.writeValueAsBytes(event.get(0)).length,
+        mapper.writeValueAsBytes(event.get(1)).length);
+    }
+  }
+
+  private static double average(ObjectMapper mapper, List<?> values) throws JsonProcessingException {
+    long total = 0;
+    for (var value : values) {
+      total += mapper.writeValueAsBytes(value).length;
+    }
+    return (double) total / values.size();
+  }
+}
@@ -0,0 +1,59 @@
+package user.registry.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import user.registry.entities.UniqueEmailEntity;
+import user.registry.entities.UserEntity;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command and event handling of the domain models, as executed by the entities on every request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserDomainBenchmark {
+
+  private final UserEntity.Create create = new UserEntity.Create("John Doe", "Belgium", "doe@acme.com");
+  private final UserEntity.ChangeEmail changeEmail = new UserEntity.ChangeEmail("john.doe@acme.com");
+  private final UserEntity.UserWasCreated userWasCreated = new UserEntity.UserWasCreated("John Doe", "Belgium", "doe@acme.com");
+  private final UserEntity.EmailAssigned emailAssigned = new UserEntity.EmailAssigned("john.doe@acme.com", Optional.of("doe@acme.com"));
+  private final UserEntity.User user = new UserEntity.User("John Doe", "Belgium", "doe@acme.com");
+
+  private final UniqueEmailEntity.UniqueEmail reservedEmail =
+    new UniqueEmailEntity.UniqueEmail("doe@acme.com", UniqueEmailEntity.Status.RESERVED, Optional.of("001"), Optional.of(Instant.parse("2023-06-01T10:15:30Z")));
+
+  @Benchmark
+  public java.util.List<UserEntity.Event> createUser() {
+    return UserEntity.User.onCommand(create).asJava();
+  }
+
+  @Benchmark
+  public java.util.List<UserEntity.Event> changeEmail() {
+    return user.onCommand(changeEmail)
+      .fold(error -> java.util.List.of(), events -> events.asJava());
+  }
+
+  @Benchmark
+  public UserEntity.User onUserWasCreated() {
+    return UserEntity.User.onEvent(userWasCreated);
+  }
+
+  @Benchmark
+  public UserEntity.User onEmailAssigned() {
+    return user.onEvent(emailAssigned);
+  }
+
+  @Benchmark
+  public void uniqueEmailPredicates(Blackhole blackhole) {
+    blackhole.consume(reservedEmail.sameOwner("001"));
+    blackhole.consume(reservedEmail.notSameOwner("002"));
+    blackhole.consume(reservedEmail.isInUse());
+  }
+}
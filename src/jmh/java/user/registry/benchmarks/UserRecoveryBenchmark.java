@@ -0,0 +1,77 @@
+package user.registry.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import kalix.javasdk.JsonSupport;
+import org.openjdk.jmh.annotations.*;
+import user.registry.entities.UserEntity;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recovery of a UserEntity that changed its email many times, by replaying its whole journal or by
+ * reading the latest snapshot and replaying the events written after it. Events and snapshots are
+ * read from the JSON Kalix persists, with the same ObjectMapper, and applied with the event handlers
+ * of UserEntity.
+ * <p>
+ * snapshotEvery = 0 replays the whole journal, as without snapshots.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserRecoveryBenchmark {
+
+  private record StoredEvent(Class<? extends UserEntity.Event> type, byte[] json) {}
+
+  @Param({"10", "100", "1000", "10000"})
+  public int journalLength;
+
+  @Param({"0", "50", "100"})
+  public int snapshotEvery;
+
+  private final ObjectMapper mapper = JsonSupport.getObjectMapper();
+
+  private List<StoredEvent> journal;
+  private byte[] snapshot;
+  private int snapshotSequence;
+
+  @Setup
+  public void writeJournal() throws IOException {
+    var events = new ArrayList<UserEntity.Event>();
+    events.add(new UserEntity.UserWasCreated("John Doe", "Belgium", "doe-0@acme.com"));
+    events.add(new UserEntity.EmailAssigned("doe-0@acme.com", Optional.empty()));
+    for (int i = 1; events.size() < journalLength; i++) {
+      events.add(new UserEntity.EmailAssigned("doe-" + i + "@acme.com", Optional.of("doe-" + (i - 1) + "@acme.com")));
+      events.add(new UserEntity.EmailUnassigned("doe-" + (i - 1) + "@acme.com"));
+    }
+
+    journal = new ArrayList<>();
+    UserEntity.User user = null;
+    for (int sequence = 1; sequence <= events.size(); sequence++) {
+      var event = events.get(sequence - 1);
+      journal.add(new StoredEvent(event.getClass(), mapper.writeValueAsBytes(event)));
+      user = UserEntity.applyEvent(user, event);
+      // the proxy snapshots the state after every snapshotEvery events
+      if (snapshotEvery > 0 && sequence % snapshotEvery == 0) {
+        snapshot = mapper.writeValueAsBytes(user);
+        snapshotSequence = sequence;
+      }
+    }
+  }
+
+  @Benchmark
+  public UserEntity.User recover() throws IOException {
+    UserEntity.User user = snapshot == null ? null : mapper.readValue(snapshot, UserEntity.User.class);
+    for (int i = snapshotSequence; i < journal.size(); i++) {
+      var stored = journal.get(i);
+      user = UserEntity.applyEvent(user, mapper.readValue(stored.json(), stored.type()));
+    }
+    return user;
+  }
+}
@@ -0,0 +1,101 @@
+package user.registry;
+
+import com.typesafe.config.ConfigFactory;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import user.registry.cache.ConfirmedEmails;
+import user.registry.api.AdmissionControl;
+import user.registry.api.StartCoalescer;
+import user.registry.api.WorkflowStatusBus;
+import user.registry.api.workflows.StepRetries;
+import user.registry.cache.UserInfoCache;
+import user.registry.faults.FaultInjector;
+import user.registry.metrics.PrometheusEndpoint;
+import user.registry.metrics.RegistryMetrics;
+import user.registry.subscribers.ConcurrencyLimiter;
+import user.registry.tracing.Tracing;
+
+@Configuration
+public class RegistryConfiguration {
+
+  @Bean
+  public Settings settings() {
+    return Settings.load(ConfigFactory.load());
+  }
+
+  @Bean
+  public PrometheusMeterRegistry prometheusMeterRegistry() {
+    return new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+  }
+
+  @Bean(initMethod = "start", destroyMethod = "stop")
+  public PrometheusEndpoint prometheusEndpoint(PrometheusMeterRegistry registry, Settings settings) {
+    return new PrometheusEndpoint(registry, settings);
+  }
+
+  @Bean
+  public RegistryMetrics registryMetrics(PrometheusMeterRegistry registry) {
+    return new RegistryMetrics(registry);
+  }
+
+  @Bean
+  public ConfirmedEmails confirmedEmails(Settings settings, RegistryMetrics metrics) {
+    var cache = settings.caches().confirmedEmails();
+    var confirmedEmails = new ConfirmedEmails(cache.maxSize(), cache.ttl());
+    metrics.registerCache("confirmed-emails", confirmedEmails.cache());
+    return confirmedEmails;
+  }
+
+  @Bean
+  public UserInfoCache userInfoCache(Settings settings, RegistryMetrics metrics) {
+    var cache = settings.caches().userInfo();
+    var userInfoCache = new UserInfoCache(cache.maxSize(), cache.ttl());
+    metrics.registerCache("user-info", userInfoCache.cache());
+    return userInfoCache;
+  }
+
+  @Bean
+  public StepRetries stepRetries(Settings settings, RegistryMetrics metrics) {
+    return new StepRetries(settings, metrics);
+  }
+
+  @Bean
+  public StartCoalescer startCoalescer(Settings settings, RegistryMetrics metrics) {
+    var cache = settings.caches().startReplies();
+    var coalescer = new StartCoalescer(cache.maxSize(), cache.ttl(), metrics);
+    metrics.registerCache("start-replies", coalescer.cache());
+    return coalescer;
+  }
+
+  @Bean
+  public AdmissionControl admissionControl(Settings settings, RegistryMetrics metrics) {
+    var admission = new AdmissionControl(settings, metrics);
+    metrics.registerAdmission(admission);
+    return admission;
+  }
+
+  @Bean
+  public WorkflowStatusBus workflowStatusBus() {
+    return new WorkflowStatusBus();
+  }
+
+  @Bean
+  public FaultInjector faultInjector(Settings settings, RegistryMetrics metrics) {
+    return new FaultInjector(settings, metrics);
+  }
+
+  @Bean
+  public ConcurrencyLimiter emailReconciliationLimiter(Settings settings, RegistryMetrics metrics) {
+    var reconciliation = settings.emailReconciliation();
+    var limiter = new ConcurrencyLimiter("email-reconciliation", reconciliation.maxConcurrency(), reconciliation.maxQueued());
+    metrics.registerLimiter("email-reconciliation", limiter);
+    return limiter;
+  }
+
+  @Bean(destroyMethod = "shutdown")
+  public Tracing tracing(Settings settings) {
+    return new Tracing(settings);
+  }
+}
@@ -0,0 +1,242 @@
+package user.registry;
+
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Application settings, read from the 'user-registry' section of application.conf.
+ */
+public record Settings(Batch batch, Metrics metrics, Workflow workflow, Caches caches, Queries queries, Reservations reservations, StatusStream statusStream, Counters counters, Faults faults, EmailReconciliation emailReconciliation, Admission admission, Tracing tracing, Retention retention) {
+
+  public record Batch(int maxConcurrency,
+                      Duration statusPollInterval,
+                      Duration awaitTimeout,
+                      int lookupConcurrency,
+                      int maxLookupSize) {}
+
+  public record Metrics(boolean enabled, int port) {}
+
+  public record Workflow(boolean speculative,
+                         boolean compactState,
+                         RetryBudget retryBudget,
+                         Map<String, StepPolicy> steps) {
+
+    /**
+     * The policy of the given step, or the 'default' one if the step isn't configured.
+     */
+    public StepPolicy stepPolicy(String step) {
+      return steps.getOrDefault(step, steps.get("default"));
+    }
+  }
+
+  /**
+   * @param maxRatioTokens retries earned by first attempts that can be saved up for a burst of failures
+   */
+  public record RetryBudget(double ratio, int minRetriesPerSecond, int maxRatioTokens) {}
+
+  /**
+   * @param attemptTimeout maximum duration of a single call
+   * @param maxAttempts    1 to not retry at all
+   * @param jitter         fraction of the backoff by which the delay is randomly moved up or down
+   */
+  public record StepPolicy(Duration attemptTimeout,
+                           int maxAttempts,
+                           Duration initialBackoff,
+                           Duration maxBackoff,
+                           double jitter) {
+
+    static StepPolicy load(Config config) {
+      return new StepPolicy(
+        config.getDuration("attempt-timeout"),
+        config.getInt("max-attempts"),
+        config.getDuration("initial-backoff"),
+        config.getDuration("max-backoff"),
+        config.getDouble("jitter"));
+    }
+  }
+
+  /**
+   * @param shards number of counter entities per country, changing it requires rebuilding the counters
+   */
+  public record Counters(int shards) {}
+
+  /**
+   * @param targets the faults per workflow step or component, see {@link user.registry.faults.FaultInjector}
+   */
+  public record Faults(boolean enabled, Map<String, Fault> targets) {}
+
+  /**
+   * @param errorRate  fraction of the calls failed on purpose, between 0 and 1
+   * @param latency    median of the latency added to every call
+   * @param latencyP99 99th percentile of the added latency, the latency is constant if it isn't above the median
+   */
+  public record Fault(double errorRate, Duration latency, Duration latencyP99) {
+    static Fault load(Config config) {
+      return new Fault(
+        config.getDouble("error-rate"),
+        config.getDuration("latency"),
+        config.getDuration("latency-p99"));
+    }
+  }
+
+  /**
+   * @param byCaller the per-key limit applies per 'X-Caller-Id' header instead of per country, when the header is set
+   * @param maxKeys  number of per-key buckets kept, the least recently used ones are dropped
+   */
+  public record Admission(boolean enabled,
+                          Limit global,
+                          Limit perKey,
+                          boolean byCaller,
+                          int maxKeys,
+                          Duration maxWait,
+                          int maxQueued) {}
+
+  public record Limit(double ratePerSecond, int burst) {
+    static Limit load(Config config) {
+      return new Limit(config.getDouble("rate-per-second"), config.getInt("burst"));
+    }
+  }
+
+  /**
+   * @param exporter 'otlp' to send the spans to otlpEndpoint over gRPC, or 'file' to append them to file
+   */
+  public record Tracing(boolean enabled,
+                        String exporter,
+                        String otlpEndpoint,
+                        String file,
+                        String serviceName,
+                        double sampleRatio) {}
+
+  /**
+   * @param gracePeriod    FINISHED and FAILED workflows are archived this long after they ended
+   * @param exportInterval time between two runs of the summary export, once started
+   */
+  public record Retention(boolean enabled,
+                          Duration gracePeriod,
+                          String exportFile,
+                          int exportBatchSize,
+                          Duration exportInterval) {}
+
+  public record EmailReconciliation(int maxConcurrency, int maxQueued) {}
+
+  public record StatusStream(Duration refreshInterval, Duration maxDuration) {}
+
+  public record Reservations(Duration ttl, Duration sweepInterval, int sweepBatchSize, int sweepRatePerSecond) {}
+
+  public record Queries(int defaultPageSize, int maxPageSize) {}
+
+  public record Caches(Cache confirmedEmails, Cache userInfo, Cache startReplies) {}
+
+  public record Cache(int maxSize, Duration ttl) {
+    static Cache load(Config config) {
+      return new Cache(config.getInt("max-size"), config.getDuration("ttl"));
+    }
+  }
+
+  public static Settings load(Config root) {
+    var config = root.getConfig("user-registry");
+
+    var batchConfig = config.getConfig("batch");
+    var batch = new Batch(
+      batchConfig.getInt("max-concurrency"),
+      batchConfig.getDuration("status-poll-interval"),
+      batchConfig.getDuration("await-timeout"),
+      batchConfig.getInt("lookup-concurrency"),
+      batchConfig.getInt("max-lookup-size"));
+
+    var metricsConfig = config.getConfig("metrics");
+    var metrics = new Metrics(
+      metricsConfig.getBoolean("enabled"),
+      metricsConfig.getInt("port"));
+
+    var workflowConfig = config.getConfig("workflow");
+    var budgetConfig = workflowConfig.getConfig("retry-budget");
+    var stepsConfig = workflowConfig.getConfig("steps");
+    var defaultStep = stepsConfig.getConfig("default");
+    var workflow = new Workflow(
+      workflowConfig.getBoolean("speculative"),
+      workflowConfig.getBoolean("compact-state"),
+      new RetryBudget(
+        budgetConfig.getDouble("ratio"),
+        budgetConfig.getInt("min-retries-per-second"),
+        budgetConfig.getInt("max-ratio-tokens")),
+      stepsConfig.root().keySet().stream()
+        .collect(Collectors.toMap(
+          step -> step,
+          step -> StepPolicy.load(stepsConfig.getConfig(step).withFallback(defaultStep)))));
+
+    var cachesConfig = config.getConfig("caches");
+    var caches = new Caches(
+      Cache.load(cachesConfig.getConfig("confirmed-emails")),
+      Cache.load(cachesConfig.getConfig("user-info")),
+      Cache.load(cachesConfig.getConfig("start-replies")));
+
+    var queriesConfig = config.getConfig("queries");
+    var queries = new Queries(
+      queriesConfig.getInt("default-page-size"),
+      queriesConfig.getInt("max-page-size"));
+
+    var reservationsConfig = config.getConfig("reservations");
+    var reservations = new Reservations(
+      reservationsConfig.getDuration("ttl"),
+      reservationsConfig.getDuration("sweep-interval"),
+      reservationsConfig.getInt("sweep-batch-size"),
+      reservationsConfig.getInt("sweep-rate-per-second"));
+
+    var statusStreamConfig = config.getConfig("status-stream");
+    var statusStream = new StatusStream(
+      statusStreamConfig.getDuration("refresh-interval"),
+      statusStreamConfig.getDuration("max-duration"));
+
+    var counters = new Counters(config.getConfig("counters").getInt("shards"));
+
+    var faultsConfig = config.getConfig("faults");
+    var targetsConfig = faultsConfig.getConfig("targets");
+    var defaultFault = faultsConfig.getConfig("default");
+    var faults = new Faults(
+      faultsConfig.getBoolean("enabled"),
+      targetsConfig.root().keySet().stream()
+        .collect(Collectors.toMap(
+          target -> target,
+          target -> Fault.load(targetsConfig.getConfig(target).withFallback(defaultFault)))));
+
+    var reconciliationConfig = config.getConfig("email-reconciliation");
+    var emailReconciliation = new EmailReconciliation(
+      reconciliationConfig.getInt("max-concurrency"),
+      reconciliationConfig.getInt("max-queued"));
+
+    var admissionConfig = config.getConfig("admission");
+    var perKeyConfig = admissionConfig.getConfig("per-key");
+    var admission = new Admission(
+      admissionConfig.getBoolean("enabled"),
+      Limit.load(admissionConfig.getConfig("global")),
+      Limit.load(perKeyConfig),
+      perKeyConfig.getString("by").equals("caller"),
+      perKeyConfig.getInt("max-keys"),
+      admissionConfig.getDuration("max-wait"),
+      admissionConfig.getInt("max-queued"));
+
+    var tracingConfig = config.getConfig("tracing");
+    var tracing = new Tracing(
+      tracingConfig.getBoolean("enabled"),
+      tracingConfig.getString("exporter"),
+      tracingConfig.getString("otlp-endpoint"),
+      tracingConfig.getString("file"),
+      tracingConfig.getString("service-name"),
+      tracingConfig.getDouble("sample-ratio"));
+
+    var retentionConfig = config.getConfig("retention");
+    var exportConfig = retentionConfig.getConfig("export");
+    var retention = new Retention(
+      retentionConfig.getBoolean("enabled"),
+      retentionConfig.getDuration("grace-period"),
+      exportConfig.getString("file"),
+      exportConfig.getInt("batch-size"),
+      exportConfig.getDuration("interval"));
+
+    return new Settings(batch, metrics, workflow, caches, queries, reservations, statusStream, counters, faults, emailReconciliation, admission, tracing, retention);
+  }
+}
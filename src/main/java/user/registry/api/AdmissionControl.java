@@ -0,0 +1,149 @@
+package user.registry.api;
+
+import user.registry.Done;
+import user.registry.Settings;
+import user.registry.cache.LruCache;
+import user.registry.metrics.RegistryMetrics;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rate limits workflow starts with a global token bucket and one bucket per caller or per country.
+ * A start that finds no token waits for one, unless 'max-queued' starts are already waiting or the
+ * wait would be longer than 'max-wait', then it's rejected with {@link Rejected}.
+ * <p>
+ * The limits apply per instance of the service.
+ */
+public class AdmissionControl {
+
+  /**
+   * A start that wasn't admitted, it can be tried again after retryAfter.
+   */
+  public static class Rejected extends RuntimeException {
+    private final Duration retryAfter;
+
+    public Rejected(Duration retryAfter) {
+      super("Too many registrations, retry after " + Math.max(1, (retryAfter.toMillis() + 999) / 1000) + "s");
+      this.retryAfter = retryAfter;
+    }
+
+    public Duration retryAfter() {
+      return retryAfter;
+    }
+  }
+
+  private final Settings.Admission settings;
+  private final RegistryMetrics metrics;
+  private final Clock clock;
+  private final Bucket global;
+  private final LruCache<String, Bucket> perKey;
+  private final AtomicInteger queued = new AtomicInteger();
+
+  public AdmissionControl(Settings settings, RegistryMetrics metrics) {
+    this(settings.admission(), metrics, Clock.systemUTC());
+  }
+
+  AdmissionControl(Settings.Admission settings, RegistryMetrics metrics, Clock clock) {
+    this.settings = settings;
+    this.metrics = metrics;
+    this.clock = clock;
+    this.global = new Bucket(settings.global(), clock);
+    this.perKey = new LruCache<>(settings.maxKeys(), Duration.ZERO);
+  }
+
+  /**
+   * The key of the per-key bucket: the caller if the limits are per caller and it's known, the
+   * country otherwise.
+   */
+  public String keyFor(Optional<String> caller, String country) {
+    if (settings.byCaller() && caller.isPresent()) return "caller:" + caller.get();
+    return "country:" + country;
+  }
+
+  /**
+   * Completes once the start is admitted, or fails with {@link Rejected}.
+   */
+  public CompletionStage<Done> admit(String key) {
+    if (!settings.enabled()) {
+      return CompletableFuture.completedFuture(Done.done());
+    }
+
+    long waitNanos;
+    synchronized (this) {
+      var keyBucket = perKey.get(key).orElseGet(() -> {
+        var bucket = new Bucket(settings.perKey(), clock);
+        perKey.put(key, bucket);
+        return bucket;
+      });
+
+      var globalWait = global.waitNanos();
+      var keyWait = keyBucket.waitNanos();
+      waitNanos = Math.max(globalWait, keyWait);
+
+      if (waitNanos > 0 && (queued.get() >= settings.maxQueued() || waitNanos > settings.maxWait().toNanos())) {
+        metrics.admissionRejected(globalWait >= keyWait ? "global" : "key");
+        return CompletableFuture.failedFuture(new Rejected(Duration.ofNanos(waitNanos)));
+      }
+
+      global.take();
+      keyBucket.take();
+      // counted under the lock, so that concurrent starts can't all pass the max-queued check
+      if (waitNanos > 0) queued.incrementAndGet();
+    }
+
+    if (waitNanos == 0) {
+      return CompletableFuture.completedFuture(Done.done());
+    }
+
+    metrics.admissionDelayed(Duration.ofNanos(waitNanos));
+    var delayed = CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS);
+    return CompletableFuture.supplyAsync(() -> {
+      queued.decrementAndGet();
+      return Done.done();
+    }, delayed);
+  }
+
+  public int queued() {
+    return queued.get();
+  }
+
+  /**
+   * Token bucket where every admitted start takes a token, even if there is none left. The tokens
+   * then go negative and tell how long the next start has to wait.
+   */
+  static class Bucket {
+    private final Settings.Limit limit;
+    private final Clock clock;
+    private double tokens;
+    private long lastRefill;
+
+    Bucket(Settings.Limit limit, Clock clock) {
+      this.limit = limit;
+      this.clock = clock;
+      this.tokens = limit.burst();
+      this.lastRefill = clock.millis();
+    }
+
+    long waitNanos() {
+      refill();
+      if (tokens >= 1) return 0;
+      return (long) ((1 - tokens) / limit.ratePerSecond() * 1_000_000_000L);
+    }
+
+    void take() {
+      tokens -= 1;
+    }
+
+    private void refill() {
+      var now = clock.millis();
+      tokens = Math.min(limit.burst(), tokens + (now - lastRefill) * limit.ratePerSecond() / 1000.0);
+      lastRefill = now;
+    }
+  }
+}
@@ -1,34 +1,248 @@
 package user.registry.api;
 
 
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import kalix.javasdk.StatusCode;
 import kalix.javasdk.action.Action;
 import kalix.javasdk.client.ComponentClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import user.registry.Done;
+import user.registry.Settings;
+import user.registry.api.workflows.UserCreationWorkflow;
+import user.registry.cache.UserInfoCache;
 import user.registry.entities.UniqueEmailEntity;
 import user.registry.entities.UserEntity;
+import user.registry.faults.FaultInjector;
+import user.registry.metrics.RegistryMetrics;
+import user.registry.tracing.Tracing;
+import user.registry.views.CountryCountersView;
+import user.registry.views.UsersByCountryView;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 @RequestMapping("/api")
 public class ApplicationController extends Action {
 
   private final Logger logger = LoggerFactory.getLogger(getClass());
   private final ComponentClient client;
+  private final RegistryMetrics metrics;
+  private final UserInfoCache userInfoCache;
+  private final Settings.Batch batchSettings;
+  private final Settings.Queries querySettings;
+  private final StartCoalescer startCoalescer;
+  private final FaultInjector faults;
+  private final AdmissionControl admission;
+  private final Tracing tracing;
 
-  public ApplicationController(ComponentClient client) {
+  public ApplicationController(ComponentClient client,
+                               RegistryMetrics metrics,
+                               UserInfoCache userInfoCache,
+                               StartCoalescer startCoalescer,
+                               FaultInjector faults,
+                               AdmissionControl admission,
+                               Tracing tracing,
+                               Settings settings) {
     this.client = client;
+    this.metrics = metrics;
+    this.userInfoCache = userInfoCache;
+    this.startCoalescer = startCoalescer;
+    this.faults = faults;
+    this.admission = admission;
+    this.tracing = tracing;
+    this.batchSettings = settings.batch();
+    this.querySettings = settings.queries();
   }
 
 
+  /**
+   * Starts the creation workflow of a user. Retries carrying the same 'Idempotency-Key' header, or
+   * the same command when there is no key, share the reply of the first request.
+   * <p>
+   * Starts that aren't deduplicated go through {@link AdmissionControl} and fail with 429 when the
+   * service is too busy, the error message tells when to retry.
+   */
+  @PostMapping("/users/{userId}")
+  public Effect<UserCreationWorkflow.State> registerUser(@PathVariable String userId, @RequestBody UserEntity.Create cmd) {
+    var metadata = actionContext().metadata();
+    var key = StartCoalescer.keyFor(userId, metadata.get("Idempotency-Key"), cmd);
+
+    var span = tracing.start("registerUser", metadata.get(Tracing.TRACEPARENT), SpanKind.SERVER,
+      Attributes.of(Tracing.WORKFLOW_ID, userId));
+
+    // only starts that actually reach the workflow are admitted, replayed and coalesced retries aren't
+    var started =
+      startCoalescer.start(key, () ->
+        admission.admit(admission.keyFor(metadata.get("X-Caller-Id"), cmd.country()))
+          .thenCompose(__ ->
+            metrics.timeCall("UserCreationWorkflow.start", () ->
+              client.forWorkflow(userId)
+                .call(UserCreationWorkflow::start)
+                .params(userId, cmd)
+                .withMetadata(tracing.metadata(span))
+                .execute())));
+
+    var res =
+      tracing.endWhenDone(span, started)
+        .<Effect<UserCreationWorkflow.State>>thenApply(state -> effects().reply(state))
+        .exceptionally(error -> {
+          var cause = error instanceof CompletionException ? error.getCause() : error;
+          if (cause instanceof AdmissionControl.Rejected rejected) {
+            logger.info("Registration of user '{}' rejected: {}", userId, rejected.getMessage());
+            return effects().error(rejected.getMessage(), StatusCode.ErrorCode.TOO_MANY_REQUESTS);
+          }
+          throw new CompletionException(cause);
+        });
+
+    return effects().asyncEffect(res);
+  }
+
+  /**
+   * Changes the email of an existing user. The reservation of the new address follows asynchronously,
+   * see EmailReconciliation, and the change is reverted if the address is already in use.
+   */
+  @PutMapping("/users/{userId}/change-email")
+  public Effect<Done> changeEmail(@PathVariable String userId, @RequestBody UserEntity.ChangeEmail cmd) {
+    var res =
+      metrics.timeCall("UserEntity.changeEmail", () ->
+        faults.inject(FaultInjector.USER_ENTITY, () ->
+          client.forEventSourcedEntity(userId)
+            .call(UserEntity::changeEmail).params(cmd)
+            .execute()));
+    return effects().asyncReply(res);
+  }
+
   @GetMapping("/users/{userId}")
   public Effect<UserInfo> getUserInfo(@PathVariable String userId) {
+    return effects().asyncReply(fetchUserInfo(userId));
+  }
+
+  /**
+   * Multi-get of users, e.g. GET /api/users?ids=001,002. Users that can't be fetched are reported
+   * with an error entry instead of failing the whole batch.
+   */
+  @GetMapping("/users")
+  public Effect<UserInfoBatch> getUserInfos(@RequestParam String ids) {
+    var userIds = Arrays.stream(ids.split(",")).map(String::trim).filter(id -> !id.isEmpty()).distinct().toList();
+    if (userIds.size() > batchSettings.maxLookupSize()) {
+      return effects().error("Too many ids, at most " + batchSettings.maxLookupSize() + " allowed", StatusCode.ErrorCode.BAD_REQUEST);
+    }
 
     var res =
-      client.forEventSourcedEntity(userId)
-        .call(UserEntity::getState)
-        .execute()
+      fanOut(userIds, this::fetchUserInfo,
+        UserInfoBatch.Entry::found,
+        UserInfoBatch.Entry::failed)
+        .thenApply(UserInfoBatch::new);
+
+    return effects().asyncReply(res);
+  }
+
+  @GetMapping("/emails/{address}")
+  public Effect<EmailInfo> getEmailInfo(@PathVariable String address) {
+    return effects().asyncReply(fetchEmailInfo(address));
+  }
+
+  /**
+   * Multi-get of email reservations. Addresses that can't be fetched are reported with an error
+   * entry instead of failing the whole batch.
+   */
+  @PostMapping("/emails/batch-get")
+  public Effect<EmailInfoBatch> getEmailInfos(@RequestBody EmailInfoBatch.Request request) {
+    var addresses = request.addresses().stream().distinct().toList();
+    if (addresses.size() > batchSettings.maxLookupSize()) {
+      return effects().error("Too many addresses, at most " + batchSettings.maxLookupSize() + " allowed", StatusCode.ErrorCode.BAD_REQUEST);
+    }
+
+    var res =
+      fanOut(addresses, this::fetchEmailInfo,
+        EmailInfoBatch.Entry::found,
+        EmailInfoBatch.Entry::failed)
+        .thenApply(EmailInfoBatch::new);
+
+    return effects().asyncReply(res);
+  }
+
+  /**
+   * One page of the users of a country, optionally restricted to a name prefix. The page size is
+   * capped by 'user-registry.queries.max-page-size'.
+   */
+  @PostMapping("/users/by-country/{country}/query")
+  public Effect<UsersByCountryView.UsersPage> queryUsersByCountry(@PathVariable String country,
+                                                                  @RequestBody CountryQuery query) {
+    var pageToken = query.pageToken().orElse("");
+    var pageSize = Math.min(query.pageSize().orElse(querySettings.defaultPageSize()), querySettings.maxPageSize());
+
+    var res =
+      query.namePrefix()
+        .map(prefix ->
+          client.forView()
+            .call(UsersByCountryView::getUsersPageByName)
+            .params(country, prefix, prefix + Character.MAX_VALUE, pageToken, pageSize))
+        .orElseGet(() ->
+          client.forView()
+            .call(UsersByCountryView::getUsersPage)
+            .params(country, pageToken, pageSize));
+
+    return effects().asyncReply(metrics.timeCall("UsersByCountryView.query", res::execute));
+  }
+
+  /**
+   * Number of users per country, summed from the counter shards.
+   */
+  @GetMapping("/countries/user-counts")
+  public Effect<CountryCounts> getUserCounts() {
+    var res =
+      metrics.timeCall("CountryCountersView.getAllCounters", () ->
+          client.forView()
+            .call(CountryCountersView::getAllCounters)
+            .execute())
+        .thenApply(rows -> {
+          var totals =
+            rows.counters().stream()
+              .collect(Collectors.groupingBy(
+                CountryCountersView.CounterRow::country,
+                Collectors.summingLong(CountryCountersView.CounterRow::count)));
+
+          return new CountryCounts(
+            totals.entrySet().stream()
+              .map(total -> new CountryCounts.CountryCount(total.getKey(), total.getValue()))
+              .sorted(Comparator.comparing(CountryCounts.CountryCount::country))
+              .toList());
+        });
+
+    return effects().asyncReply(res);
+  }
+
+  private CompletionStage<UserInfo> fetchUserInfo(String userId) {
+    var cached = userInfoCache.get(userId);
+    if (cached.isPresent()) {
+      logger.info("Getting user info from cache: {}", cached.get());
+      return CompletableFuture.completedFuture(cached.get());
+    }
+
+    var stamp = userInfoCache.stamp();
+    var span = callSpan("UserEntity.getState");
+    return
+      metrics.timeCall("UserEntity.getState", () ->
+          tracing.endWhenDone(span,
+            faults.inject(FaultInjector.USER_ENTITY, () ->
+              client.forEventSourcedEntity(userId)
+                .call(UserEntity::getState)
+                .withMetadata(tracing.metadata(span))
+                .execute())))
         .thenApply(user -> {
           var userInfo =
             new UserInfo(
@@ -38,18 +252,21 @@ public class ApplicationController extends Action {
               user.email());
 
           logger.info("Getting user info: {}", userInfo);
+          userInfoCache.put(userInfo, stamp);
           return userInfo;
         });
-
-    return effects().asyncReply(res);
   }
 
-  @GetMapping("/emails/{address}")
-  public Effect<EmailInfo> getEmailInfo(@PathVariable String address) {
-    var res =
-      client.forValueEntity(address)
-        .call(UniqueEmailEntity::getState)
-        .execute()
+  private CompletionStage<EmailInfo> fetchEmailInfo(String address) {
+    var span = callSpan("UniqueEmailEntity.getState");
+    return
+      metrics.timeCall("UniqueEmailEntity.getState", () ->
+          tracing.endWhenDone(span,
+            faults.inject(FaultInjector.UNIQUE_EMAIL_ENTITY, () ->
+              client.forValueEntity(address)
+                .call(UniqueEmailEntity::getState)
+                .withMetadata(tracing.metadata(span))
+                .execute())))
         .thenApply(email -> {
           var emailInfo =
             new EmailInfo(
@@ -60,8 +277,31 @@ public class ApplicationController extends Action {
           logger.info("Getting email info: {}", emailInfo);
           return emailInfo;
         });
+  }
 
-    return effects().asyncReply(res);
+  /**
+   * Span of a call to a component, in the trace of the request if the caller sent one.
+   */
+  private Span callSpan(String component) {
+    return tracing.start(component, actionContext().metadata().get(Tracing.TRACEPARENT), SpanKind.CLIENT, Attributes.empty());
+  }
+
+  /**
+   * Calls fetch for every id, with at most 'user-registry.batch.lookup-concurrency' calls in flight,
+   * and collects one entry per id in the order of the ids.
+   */
+  private <T, E> CompletionStage<List<E>> fanOut(List<String> ids,
+                                                 Function<String, CompletionStage<T>> fetch,
+                                                 BiFunction<String, T, E> found,
+                                                 BiFunction<String, String, E> failed) {
+    return Flux.fromIterable(ids)
+      .flatMapSequential(id ->
+          Mono.fromCompletionStage(() -> fetch.apply(id))
+            .map(value -> found.apply(id, value))
+            .onErrorResume(error -> Mono.just(failed.apply(id, error.getMessage()))),
+        batchSettings.lookupConcurrency())
+      .collectList()
+      .toFuture();
   }
 
 }
@@ -0,0 +1,6 @@
+package user.registry.api;
+
+import java.util.List;
+
+public record BatchRegistration(List<RegistrationLine> users) {
+}
@@ -0,0 +1,137 @@
+package user.registry.api;
+
+import kalix.javasdk.DeferredCallResponseException;
+import kalix.javasdk.action.Action;
+import kalix.javasdk.client.ComponentClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import user.registry.Done;
+import user.registry.Settings;
+import user.registry.api.workflows.UserCreationWorkflow;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Bulk registration endpoint. Starts one {@link UserCreationWorkflow} per line, with at most
+ * 'user-registry.batch.max-concurrency' workflows in flight, and streams back one result per user
+ * as soon as its workflow reaches a final status, see {@link RegistrationResult} for the others.
+ */
+@RequestMapping("/api")
+public class BatchRegistrationController extends Action {
+
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  private final ComponentClient client;
+  private final Settings.Batch settings;
+  private final WorkflowStatusBus statusBus;
+  private final AdmissionControl admission;
+  private final StartCoalescer startCoalescer;
+
+  public BatchRegistrationController(ComponentClient client,
+                                     Settings settings,
+                                     WorkflowStatusBus statusBus,
+                                     AdmissionControl admission,
+                                     StartCoalescer startCoalescer) {
+    this.client = client;
+    this.settings = settings.batch();
+    this.statusBus = statusBus;
+    this.admission = admission;
+    this.startCoalescer = startCoalescer;
+  }
+
+  @PostMapping("/registrations")
+  public Flux<Effect<RegistrationResult>> register(@RequestBody BatchRegistration batch) {
+    logger.info("Registering batch of {} users", batch.users().size());
+    var caller = actionContext().metadata().get("X-Caller-Id");
+    // flatMap only requests a new line once one of the in-flight workflows completes
+    return Flux.fromIterable(batch.users())
+      .flatMap(line -> register(line, caller), settings.maxConcurrency())
+      .map(result -> effects().reply(result));
+  }
+
+  /**
+   * Starts are deduplicated with the ones of POST /api/users/{userId}, a line sent again, in a
+   * retried batch or on its own, shares the reply of the first start.
+   * Lines wait for the admission control, and are reported as REJECTED if they aren't admitted
+   * within the await timeout, or if the workflow refuses them.
+   * Once the workflow started, a line that doesn't complete in time is reported as PENDING.
+   */
+  private Mono<RegistrationResult> register(RegistrationLine line, Optional<String> caller) {
+    var cmd = line.toCreate();
+    var key = StartCoalescer.keyFor(line.userId(), Optional.empty(), cmd);
+    return Mono.fromCompletionStage(() ->
+        startCoalescer.start(key, () -> {
+          var admissionDeadline = Instant.now().plus(settings.awaitTimeout());
+          return admit(admission.keyFor(caller, line.country()), admissionDeadline)
+            .then(Mono.fromCompletionStage(() ->
+              client.forWorkflow(line.userId())
+                .call(UserCreationWorkflow::start)
+                .params(line.userId(), cmd)
+                .execute()))
+            .toFuture();
+        }))
+      .onErrorResume(error -> Mono.error(new NotStarted(error)))
+      .flatMap(started ->
+        started.status().isTerminal()
+          ? Mono.just(RegistrationResult.of(started))
+          : awaitCompletion(line.userId())
+            .map(RegistrationResult::of)
+            .onErrorResume(error -> {
+              logger.warn("Registration of user '{}' did not complete in time: {}", line.userId(), error.getMessage());
+              return Mono.just(RegistrationResult.pending(line.userId()));
+            }))
+      .onErrorResume(NotStarted.class, notStarted -> {
+        var error = notStarted.getCause();
+        logger.warn("Registration of user '{}' did not start: {}", line.userId(), error.getMessage());
+        return Mono.just(
+          isRejection(error)
+            ? RegistrationResult.rejected(line.userId(), error.getMessage())
+            : RegistrationResult.unknown(line.userId(), error.getMessage()));
+      });
+  }
+
+  /**
+   * Tries again after the wait given by each rejection, as long as it ends before the deadline.
+   */
+  private Mono<Done> admit(String key, Instant deadline) {
+    return Mono.fromCompletionStage(() -> admission.admit(key))
+      .onErrorResume(AdmissionControl.Rejected.class, rejected ->
+        Instant.now().plus(rejected.retryAfter()).isAfter(deadline)
+          ? Mono.error(rejected)
+          : Mono.delay(rejected.retryAfter()).then(Mono.defer(() -> admit(key, deadline))));
+  }
+
+  private Mono<UserCreationWorkflow.State> awaitCompletion(String userId) {
+    return WorkflowStatusBus.untilTerminal(statusBus, client, userId, settings.statusPollInterval())
+      .filter(state -> state.status().isTerminal())
+      .next()
+      .timeout(settings.awaitTimeout());
+  }
+
+  /**
+   * An answer saying the workflow wasn't started, as opposed to a failure that leaves it unknown.
+   */
+  private static boolean isRejection(Throwable error) {
+    var cause = error instanceof CompletionException ? error.getCause() : error;
+    if (cause instanceof AdmissionControl.Rejected) return true;
+    if (cause instanceof DeferredCallResponseException response) {
+      return switch (response.errorCode()) {
+        case BAD_REQUEST, CONFLICT, FORBIDDEN, UNAUTHORIZED, NOT_FOUND, TOO_MANY_REQUESTS -> true;
+        default -> false;
+      };
+    }
+    return false;
+  }
+
+  private static class NotStarted extends RuntimeException {
+    NotStarted(Throwable cause) {
+      super(cause);
+    }
+  }
+}
@@ -0,0 +1,9 @@
+package user.registry.api;
+
+import java.util.List;
+
+public record CountryCounts(List<CountryCount> countries) {
+
+  public record CountryCount(String country, long count) {
+  }
+}
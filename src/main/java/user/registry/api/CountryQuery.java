@@ -0,0 +1,6 @@
+package user.registry.api;
+
+import java.util.Optional;
+
+public record CountryQuery(Optional<String> namePrefix, Optional<String> pageToken, Optional<Integer> pageSize) {
+}
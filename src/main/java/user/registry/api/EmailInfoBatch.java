@@ -0,0 +1,21 @@
+package user.registry.api;
+
+import java.util.List;
+import java.util.Optional;
+
+public record EmailInfoBatch(List<Entry> emails) {
+
+  public record Request(List<String> addresses) {
+  }
+
+  public record Entry(String address, Optional<EmailInfo> email, Optional<String> error) {
+
+    public static Entry found(String address, EmailInfo email) {
+      return new Entry(address, Optional.of(email), Optional.empty());
+    }
+
+    public static Entry failed(String address, String error) {
+      return new Entry(address, Optional.empty(), Optional.ofNullable(error));
+    }
+  }
+}
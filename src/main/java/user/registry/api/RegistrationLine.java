@@ -0,0 +1,10 @@
+package user.registry.api;
+
+import user.registry.entities.UserEntity;
+
+public record RegistrationLine(String userId, String name, String country, String email) {
+
+  public UserEntity.Create toCreate() {
+    return new UserEntity.Create(name, country, email);
+  }
+}
@@ -0,0 +1,39 @@
+package user.registry.api;
+
+import user.registry.api.workflows.UserCreationWorkflow;
+
+import java.util.Optional;
+
+/**
+ * Result of one line of a batch registration. Besides the final statuses of the workflow, the
+ * status is one of:
+ * <ul>
+ *   <li>{@link #PENDING}: the workflow started but didn't reach a final status in time, it's still running</li>
+ *   <li>{@link #UNKNOWN}: starting the workflow failed without an answer, it may or may not have started</li>
+ *   <li>{@link #REJECTED}: the workflow wasn't started, the error message tells why</li>
+ * </ul>
+ * The creation workflow of a user has the id of the user, the outcome of a PENDING or UNKNOWN line can
+ * be checked later with GET /api/users/{userId}/creation-workflow.
+ */
+public record RegistrationResult(String userId, String status, Optional<String> errorMessage) {
+
+  public static final String PENDING = "PENDING";
+  public static final String UNKNOWN = "UNKNOWN";
+  public static final String REJECTED = "REJECTED";
+
+  public static RegistrationResult of(UserCreationWorkflow.State state) {
+    return new RegistrationResult(state.userId(), state.status().toString(), state.errorMessage());
+  }
+
+  public static RegistrationResult pending(String userId) {
+    return new RegistrationResult(userId, PENDING, Optional.empty());
+  }
+
+  public static RegistrationResult unknown(String userId, String errorMessage) {
+    return new RegistrationResult(userId, UNKNOWN, Optional.ofNullable(errorMessage));
+  }
+
+  public static RegistrationResult rejected(String userId, String errorMessage) {
+    return new RegistrationResult(userId, REJECTED, Optional.ofNullable(errorMessage));
+  }
+}
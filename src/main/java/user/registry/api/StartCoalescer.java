@@ -0,0 +1,73 @@
+package user.registry.api;
+
+import user.registry.api.workflows.UserCreationWorkflow;
+import user.registry.cache.LruCache;
+import user.registry.entities.UserEntity;
+import user.registry.metrics.RegistryMetrics;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates workflow starts within this service instance. Concurrent starts with the same key
+ * share the reply of the first one. Replies of ended workflows, FINISHED or FAILED, are replayed for a
+ * while from a bounded cache, so client retries don't reach the workflow. Other replies would soon be
+ * stale, and a PAUSED workflow is resumed by starting it again, so they aren't remembered.
+ */
+public class StartCoalescer {
+
+  private final ConcurrentHashMap<String, CompletableFuture<UserCreationWorkflow.State>> inFlight = new ConcurrentHashMap<>();
+  private final LruCache<String, UserCreationWorkflow.State> replies;
+  private final RegistryMetrics metrics;
+
+  public StartCoalescer(int maxSize, Duration window, RegistryMetrics metrics) {
+    this.replies = new LruCache<>(maxSize, window);
+    this.metrics = metrics;
+  }
+
+  /**
+   * Key of a start: the idempotency key given by the client, or else the command itself, so that a
+   * retried command is recognized without one.
+   */
+  public static String keyFor(String userId, Optional<String> idempotencyKey, UserEntity.Create cmd) {
+    return idempotencyKey
+      .map(key -> userId + "|key:" + key)
+      .orElseGet(() -> userId + "|cmd:" + cmd);
+  }
+
+  public CompletionStage<UserCreationWorkflow.State> start(String key, Supplier<CompletionStage<UserCreationWorkflow.State>> start) {
+    var replayed = replies.get(key);
+    if (replayed.isPresent()) {
+      metrics.startDeduplicated("replayed");
+      return CompletableFuture.completedFuture(replayed.get());
+    }
+
+    var reply = new CompletableFuture<UserCreationWorkflow.State>();
+    var existing = inFlight.putIfAbsent(key, reply);
+    if (existing != null) {
+      metrics.startDeduplicated("coalesced");
+      return existing;
+    }
+
+    start.get().whenComplete((state, error) -> {
+      // failed starts are not remembered, the next retry goes through
+      if (error == null && isEnded(state)) replies.put(key, state);
+      inFlight.remove(key, reply);
+      if (error == null) reply.complete(state);
+      else reply.completeExceptionally(error);
+    });
+    return reply;
+  }
+
+  private static boolean isEnded(UserCreationWorkflow.State state) {
+    return state.status() == UserCreationWorkflow.Status.FINISHED || state.status() == UserCreationWorkflow.Status.FAILED;
+  }
+
+  public LruCache<String, UserCreationWorkflow.State> cache() {
+    return replies;
+  }
+}
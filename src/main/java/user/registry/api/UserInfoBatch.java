@@ -0,0 +1,18 @@
+package user.registry.api;
+
+import java.util.List;
+import java.util.Optional;
+
+public record UserInfoBatch(List<Entry> users) {
+
+  public record Entry(String id, Optional<UserInfo> user, Optional<String> error) {
+
+    public static Entry found(String id, UserInfo user) {
+      return new Entry(id, Optional.of(user), Optional.empty());
+    }
+
+    public static Entry failed(String id, String error) {
+      return new Entry(id, Optional.empty(), Optional.ofNullable(error));
+    }
+  }
+}
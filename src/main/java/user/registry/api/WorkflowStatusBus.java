@@ -0,0 +1,52 @@
+package user.registry.api;
+
+import kalix.javasdk.client.ComponentClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import user.registry.api.workflows.UserCreationWorkflow;
+
+import java.time.Duration;
+
+/**
+ * In-process feed of the state transitions of the creation workflows running in this service
+ * instance. Transitions of workflows running on another instance are not seen, subscribers combine
+ * it with an occasional read of the workflow state.
+ */
+public class WorkflowStatusBus {
+
+  private final Sinks.Many<UserCreationWorkflow.State> sink = Sinks.many().multicast().directBestEffort();
+
+  public synchronized void publish(UserCreationWorkflow.State state) {
+    // no subscribers or a slow one is fine, it will catch up with the next read of the state
+    sink.tryEmitNext(state);
+  }
+
+  public Flux<UserCreationWorkflow.State> updates(String userId) {
+    return sink.asFlux().filter(state -> userId.equals(state.userId()));
+  }
+
+  /**
+   * The current state of a workflow followed by each of its status changes, completing with the
+   * first final status. Transitions come from the bus, the state is also read every refreshInterval
+   * in case the workflow runs on another instance.
+   */
+  public static Flux<UserCreationWorkflow.State> untilTerminal(WorkflowStatusBus bus,
+                                                               ComponentClient client,
+                                                               String userId,
+                                                               Duration refreshInterval) {
+    var read =
+      Mono.fromCompletionStage(() ->
+        client.forWorkflow(userId)
+          .call(UserCreationWorkflow::getState)
+          .execute());
+
+    // subscribed together, so no transition is missed between the first read and the bus
+    return Flux.merge(
+        bus.updates(userId),
+        read,
+        Flux.interval(refreshInterval).concatMap(__ -> read))
+      .distinctUntilChanged(UserCreationWorkflow.State::status)
+      .takeUntil(state -> state.status().isTerminal());
+  }
+}
@@ -0,0 +1,35 @@
+package user.registry.api;
+
+import kalix.javasdk.action.Action;
+import kalix.javasdk.client.ComponentClient;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import reactor.core.publisher.Flux;
+import user.registry.Settings;
+import user.registry.api.workflows.UserCreationWorkflow;
+
+/**
+ * Streams the status transitions of a creation workflow until it reaches a final status, replacing
+ * client side polling of GET /api/users/{userId}/creation-workflow.
+ */
+@RequestMapping("/api")
+public class WorkflowStatusController extends Action {
+
+  private final ComponentClient client;
+  private final WorkflowStatusBus statusBus;
+  private final Settings.StatusStream settings;
+
+  public WorkflowStatusController(ComponentClient client, WorkflowStatusBus statusBus, Settings settings) {
+    this.client = client;
+    this.statusBus = statusBus;
+    this.settings = settings.statusStream();
+  }
+
+  @GetMapping("/users/{userId}/creation-workflow/stream")
+  public Flux<Effect<UserCreationWorkflow.State>> streamState(@PathVariable String userId) {
+    return WorkflowStatusBus.untilTerminal(statusBus, client, userId, settings.refreshInterval())
+      .take(settings.maxDuration())
+      .map(state -> effects().reply(state));
+  }
+}
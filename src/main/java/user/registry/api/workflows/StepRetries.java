@@ -0,0 +1,148 @@
+package user.registry.api.workflows;
+
+import user.registry.Settings;
+import user.registry.metrics.RegistryMetrics;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs the calls of the workflow steps with the retry policy configured for each step: a timeout per
+ * attempt, exponential backoff with jitter between attempts, and a retry budget shared by all steps.
+ * <p>
+ * An attempt that times out isn't cancelled, the call may still be applied after the next attempt
+ * started. The calls retried here must be idempotent.
+ * <p>
+ * Kalix retries a failed step right away, so the steps delegate their retries to this class and only
+ * rely on Kalix for the failover once all attempts are exhausted.
+ */
+public class StepRetries {
+
+  private final Settings.Workflow settings;
+  private final RegistryMetrics metrics;
+  private final Budget budget;
+
+  public StepRetries(Settings settings, RegistryMetrics metrics) {
+    this(settings, metrics, Clock.systemUTC());
+  }
+
+  StepRetries(Settings settings, RegistryMetrics metrics, Clock clock) {
+    this.settings = settings.workflow();
+    this.metrics = metrics;
+    this.budget = new Budget(this.settings.retryBudget(), clock);
+  }
+
+  public <T> CompletionStage<T> run(String step, Supplier<CompletionStage<T>> call) {
+    budget.deposit();
+    return attempt(step, settings.stepPolicy(step), call, 1);
+  }
+
+  /**
+   * Upper bound of the time a step can take with all its attempts and backoffs, used as Kalix step
+   * timeout.
+   */
+  public Duration stepTimeout(String step) {
+    var policy = settings.stepPolicy(step);
+    var timeout = policy.attemptTimeout().multipliedBy(policy.maxAttempts());
+    for (int attempt = 1; attempt < policy.maxAttempts(); attempt++) {
+      timeout = timeout.plus(maxBackoff(policy, attempt));
+    }
+    return timeout;
+  }
+
+  private <T> CompletionStage<T> attempt(String step, Settings.StepPolicy policy, Supplier<CompletionStage<T>> call, int attempt) {
+    return call.get()
+      .toCompletableFuture()
+      .orTimeout(policy.attemptTimeout().toMillis(), TimeUnit.MILLISECONDS)
+      .handle((value, error) -> {
+        if (error == null) {
+          return CompletableFuture.completedFuture(value);
+        }
+        if (attempt >= policy.maxAttempts()) {
+          return CompletableFuture.<T>failedFuture(error);
+        }
+        if (!budget.tryWithdraw()) {
+          metrics.retryBudgetExhausted(step);
+          return CompletableFuture.<T>failedFuture(error);
+        }
+
+        var delay = backoff(policy, attempt);
+        metrics.retryScheduled(step, delay);
+        var delayed = CompletableFuture.delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS);
+        return CompletableFuture.supplyAsync(() -> null, delayed)
+          .thenCompose(__ -> attempt(step, policy, call, attempt + 1));
+      })
+      .thenCompose(next -> next);
+  }
+
+  static Duration backoff(Settings.StepPolicy policy, int attempt) {
+    return backoff(policy, attempt, ThreadLocalRandom.current());
+  }
+
+  static Duration backoff(Settings.StepPolicy policy, int attempt, Random random) {
+    var base = baseBackoff(policy, attempt).toMillis();
+    var jitter = (random.nextDouble() * 2 - 1) * policy.jitter();
+    return Duration.ofMillis(Math.max(0, Math.round(base * (1 + jitter))));
+  }
+
+  private static Duration maxBackoff(Settings.StepPolicy policy, int attempt) {
+    return Duration.ofMillis(Math.round(baseBackoff(policy, attempt).toMillis() * (1 + policy.jitter())));
+  }
+
+  private static Duration baseBackoff(Settings.StepPolicy policy, int attempt) {
+    // attempt 1 failed -> initial backoff, then doubling, capped by max backoff
+    var factor = 1L << Math.min(attempt - 1, 30);
+    var millis = Math.min(policy.initialBackoff().toMillis() * factor, policy.maxBackoff().toMillis());
+    return Duration.ofMillis(millis);
+  }
+
+  /**
+   * Two token buckets: every first attempt deposits 'ratio' tokens in the first one, up to
+   * 'max-ratio-tokens', and the second one is refilled with 'min-retries-per-second' tokens per second,
+   * which is its capacity as well. Every retry takes a token from the first bucket, or from the second
+   * one when the first is empty, so retries follow the load and still trickle through when it's low.
+   */
+  static class Budget {
+    private final Settings.RetryBudget settings;
+    private final Clock clock;
+    private double ratioTokens;
+    private double minTokens;
+    private long lastRefill;
+
+    Budget(Settings.RetryBudget settings, Clock clock) {
+      this.settings = settings;
+      this.clock = clock;
+      this.minTokens = settings.minRetriesPerSecond();
+      this.lastRefill = clock.millis();
+    }
+
+    synchronized void deposit() {
+      ratioTokens = Math.min(settings.maxRatioTokens(), ratioTokens + settings.ratio());
+    }
+
+    synchronized boolean tryWithdraw() {
+      if (ratioTokens >= 1) {
+        ratioTokens -= 1;
+        return true;
+      }
+      refill();
+      if (minTokens >= 1) {
+        minTokens -= 1;
+        return true;
+      }
+      return false;
+    }
+
+    private void refill() {
+      var now = clock.millis();
+      minTokens = Math.min(settings.minRetriesPerSecond(), minTokens + (now - lastRefill) * settings.minRetriesPerSecond() / 1000.0);
+      lastRefill = now;
+    }
+  }
+}
@@ -1,18 +1,41 @@
 package user.registry.api.workflows;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import kalix.javasdk.DeferredCallResponseException;
+import kalix.javasdk.Metadata;
+import kalix.javasdk.StatusCode;
+import kalix.javasdk.annotations.Acl;
 import kalix.javasdk.annotations.Id;
 import kalix.javasdk.annotations.TypeId;
 import kalix.javasdk.client.ComponentClient;
+import kalix.javasdk.impl.StatusCodeConverter;
 import kalix.javasdk.workflow.Workflow;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.bind.annotation.*;
 import user.registry.Done;
 import user.registry.Result;
+import user.registry.Settings;
+import user.registry.api.WorkflowStatusBus;
+import user.registry.cache.ConfirmedEmails;
+import user.registry.entities.CreationStatusEntity;
 import user.registry.entities.UniqueEmailEntity;
 import user.registry.entities.UserEntity;
+import user.registry.faults.FaultInjector;
+import user.registry.tracing.Tracing;
+import user.registry.metrics.RegistryMetrics;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 import static kalix.javasdk.workflow.Workflow.RecoverStrategy.maxRetries;
 
@@ -21,35 +44,103 @@ import static kalix.javasdk.workflow.Workflow.RecoverStrategy.maxRetries;
 @Id("userId")
 public class UserCreationWorkflow extends Workflow<UserCreationWorkflow.State> {
 
+  // the same CONFLICT as the entities, workflow errors only take a gRPC code in this SDK version
+  private static final io.grpc.Status.Code EMAIL_IN_USE = StatusCodeConverter.toGrpcCode(StatusCode.ErrorCode.CONFLICT);
+
   private final Logger logger = LoggerFactory.getLogger(UserCreationWorkflow.class);
   private final ComponentClient componentClient;
+  private final RegistryMetrics metrics;
+  private final Settings.Workflow settings;
+  private final ConfirmedEmails confirmedEmails;
+  private final StepRetries retries;
+  private final WorkflowStatusBus statusBus;
+  private final FaultInjector faults;
+  private final Tracing tracing;
 
-  public UserCreationWorkflow(ComponentClient componentClient) {
+  public UserCreationWorkflow(ComponentClient componentClient,
+                              RegistryMetrics metrics,
+                              Settings settings,
+                              ConfirmedEmails confirmedEmails,
+                              StepRetries retries,
+                              WorkflowStatusBus statusBus,
+                              FaultInjector faults,
+                              Tracing tracing) {
     this.componentClient = componentClient;
+    this.metrics = metrics;
+    this.settings = settings.workflow();
+    this.confirmedEmails = confirmedEmails;
+    this.retries = retries;
+    this.statusBus = statusBus;
+    this.faults = faults;
+    this.tracing = tracing;
   }
 
   public enum Status {
     RESERVING_EMAIL,
+    RESERVING_EMAIL_AND_CREATING_USER,
+    REMOVING_USER,
     CREATING_USER,
     CONFIRMING_EMAIL,
     FINISHED,
     PAUSED,
     FAILED;
+
+    /**
+     * A workflow in one of these statuses won't make any progress without external intervention.
+     */
+    public boolean isTerminal() {
+      return this == FINISHED || this == PAUSED || this == FAILED;
+    }
   }
 
+  /**
+   * Absent values are left out of the persisted JSON, states written before that are still readable.
+   * The traceparent is the span of the start, the parent of the spans of all the steps. An archived
+   * state is the summary of an ended workflow, see {@link #archived(Instant)}.
+   */
+  @JsonInclude(JsonInclude.Include.NON_ABSENT)
   public record State(String userId,
                       UserEntity.Create createCmd,
                       Status status,
-                      Optional<String> errorMessage) {
+                      Optional<String> errorMessage,
+                      Instant startedAt,
+                      Optional<String> traceparent,
+                      Optional<Instant> archivedAt) {
+
+    public State {
+      if (errorMessage == null) errorMessage = Optional.empty();
+      if (traceparent == null) traceparent = Optional.empty();
+      if (archivedAt == null) archivedAt = Optional.empty();
+    }
+
+    /**
+     * Once the user exists, the remaining steps only need the email of the command.
+     */
+    public State withoutUserDetails() {
+      return new State(userId, new UserEntity.Create(null, null, createCmd.email()), status, errorMessage, startedAt, traceparent, archivedAt);
+    }
 
     public State withStatus(Status status) {
-      return new State(userId, createCmd, status, errorMessage);
+      return new State(userId, createCmd, status, errorMessage, startedAt, traceparent, archivedAt);
     }
 
     public State withErrorMessage(String errorMessage) {
-      return new State(userId, createCmd, status, Optional.of(errorMessage));
+      return new State(userId, createCmd, status, Optional.of(errorMessage), startedAt, traceparent, archivedAt);
+    }
+
+    /**
+     * What's left of the workflow once it's archived: the outcome and the email, without the user
+     * details and the trace.
+     */
+    public State archived(Instant now) {
+      return new State(userId, new UserEntity.Create(null, null, createCmd.email()), status, errorMessage, startedAt, Optional.empty(), Optional.of(now));
     }
+  }
 
+  /**
+   * Outcome of the speculative step, the reservation and the creation are both attempted.
+   */
+  public record SpeculativeResult(Optional<String> reservationError, Optional<String> creationError) {
   }
 
   @GetMapping("/users/{userId}/creation-workflow")
@@ -57,14 +148,68 @@ public class UserCreationWorkflow extends Workflow<UserCreationWorkflow.State> {
     return effects().reply(currentState());
   }
 
-  @PostMapping("/users/{userId}")
+  /**
+   * Replaces an ended workflow by its summary, called by WorkflowRetention once the grace period is
+   * over. Kalix keeps a workflow forever, this is what keeps its stored state small.
+   */
+  @PostMapping("/users/{userId}/creation-workflow/archive")
+  @Acl(allow = @Acl.Matcher(service = "*"))
+  public Effect<State> archive() {
+    if (currentState() == null) {
+      return effects().error("Workflow not found");
+    }
+    if (currentState().archivedAt().isPresent()) {
+      return effects().reply(currentState());
+    }
+    if (currentState().status() != Status.FINISHED && currentState().status() != Status.FAILED) {
+      return effects().error("Workflow in status " + currentState().status() + " can't be archived");
+    }
+
+    logger.info("Archiving workflow (id:{})", commandContext().workflowId());
+    metrics.workflowArchived(currentState().status().name());
+    var summary = currentState().archived(Instant.now());
+    return effects()
+      .updateState(summary)
+      .end()
+      .thenReply(summary);
+  }
+
+  /**
+   * Clients register users through POST /api/users/{userId} on ApplicationController, which
+   * deduplicates retries and applies the admission control before they reach the workflow, so the
+   * start is only open to the services, not to the internet.
+   */
+  @PostMapping("/users/{userId}/creation-workflow")
+  @Acl(allow = @Acl.Matcher(service = "*"))
   public Effect<State> start(@PathVariable String userId, @RequestBody UserEntity.Create cmd) {
 
     if (currentState() == null || currentState().status() == Status.PAUSED) {
+      // reject before anything is written if the address is known to be confirmed for someone else
+      if (confirmedEmails.isTakenByOtherThan(cmd.email(), userId)) {
+        logger.info("Email '{}' already in use, not starting workflow (id:{})", cmd.email(), commandContext().workflowId());
+        return effects().error("Email is already in use", EMAIL_IN_USE);
+      }
+
       var label = currentState() == null ? "Starting" : "Resuming";
       logger.info("{} workflow (id:{})", label, commandContext().workflowId());
 
-      var state = new State(userId, cmd, Status.RESERVING_EMAIL, Optional.empty());
+      var span = tracing.start(
+        "UserCreationWorkflow.start",
+        commandContext().metadata().get(Tracing.TRACEPARENT),
+        SpanKind.SERVER,
+        Attributes.of(Tracing.WORKFLOW_ID, userId));
+      var traceparent = tracing.traceparent(span);
+      span.end();
+
+      if (settings.speculative()) {
+        var state = new State(userId, cmd, Status.RESERVING_EMAIL_AND_CREATING_USER, Optional.empty(), Instant.now(), traceparent, Optional.empty());
+        return effects()
+          .updateState(state)
+          .transitionTo("reserve-email-and-create-user", cmd)
+          .thenReply(state);
+      }
+
+      var state = new State(userId, cmd, Status.RESERVING_EMAIL, Optional.empty(), Instant.now(), traceparent, Optional.empty());
       return effects()
         .updateState(state)
         .transitionTo("reserve-email", new UniqueEmailEntity.ReserveEmail(cmd.email(), userId))
@@ -78,45 +223,131 @@ public class UserCreationWorkflow extends Workflow<UserCreationWorkflow.State> {
   @Override
   public WorkflowDef<State> definition() {
 
+    //---------------------------------------------------------------------------------------------
+    // the outcomes, PAUSED, FINISHED or FAILED, go through this step once persisted, so that they are
+    // recorded for bulk queries and retention. A failed recording is retried until it succeeds, unlike
+    // the best effort recording of the statuses in between, see enterStep.
+    var recordStatusStepName = "record-status";
+    var recordStatus =
+      step(recordStatusStepName)
+        .asyncCall(
+          () -> {
+            publishPersisted();
+            var status = creationStatus(currentState());
+            return runStep(recordStatusStepName, FaultInjector.CREATION_STATUS_ENTITY, metadata ->
+              componentClient
+                .forValueEntity(status.userId())
+                .call(CreationStatusEntity::record).params(status)
+                .withMetadata(metadata)
+                .execute());
+          }
+        )
+        .andThen(
+          Done.class,
+          __ -> currentState().status() == Status.PAUSED ? effects().pause() : effects().end())
+        .timeout(retries.stepTimeout(recordStatusStepName));
+
+    //---------------------------------------------------------------------------------------------
+    // compensation of the speculative step, removes the user if the email couldn't be reserved,
+    // and of the confirmation, if the reservation was lost before it
+    var removeUserStepName = "remove-user";
+    var removeUser =
+      step(removeUserStepName)
+        .asyncCall(
+          () -> {
+            enterStep();
+            logger.info("step[{}]: removing user: '{}'", removeUserStepName, currentState().userId());
+            return runStep(removeUserStepName, FaultInjector.USER_ENTITY, metadata ->
+              componentClient
+                .forEventSourcedEntity(currentState().userId())
+                .call(UserEntity::removeUser)
+                .withMetadata(metadata)
+                .execute());
+          }
+        )
+        // the user is gone, the workflow pauses like a regular reservation failure
+        .andThen(Done.class, __ -> {
+          var paused = currentState().withStatus(Status.PAUSED);
+          recordCompletion(paused);
+          return effects()
+            .updateState(paused)
+            .transitionTo(recordStatusStepName);
+        })
+        .timeout(retries.stepTimeout(removeUserStepName));
+
     //---------------------------------------------------------------------------------------------
     var confirmEmailStepName = "confirm-email";
     var confirmEmail =
       step(confirmEmailStepName)
-        .call(
+        .asyncCall(
           () -> {
+            enterStep();
             logger.info("step[{}]: confirming address: '{}'", confirmEmailStepName, currentState().createCmd().email());
-            return componentClient
-              .forValueEntity(currentState().createCmd.email())
-              .call(UniqueEmailEntity::confirm);
+            return confirm(confirmEmailStepName);
           }
         )
-        // when this step finishes, the workflow is done
+        // when this step finishes, the workflow is done, unless the reservation was lost
         .andThen(
-          Done.class,
-          __ ->
-            effects()
-              .updateState(currentState().withStatus(Status.FINISHED))
-              .end());
+          Result.class,
+          result -> onConfirmation(confirmEmailStepName, result, removeUserStepName, recordStatusStepName))
+        .timeout(retries.stepTimeout(confirmEmailStepName));
+
+    //---------------------------------------------------------------------------------------------
+    // speculative mode: confirms the email, then makes the provisional user visible, so that a lost
+    // reservation never shows the user. Both calls are idempotent, a failed step is simply run again
+    var confirmAndActivateStepName = "confirm-email-and-activate-user";
+    var activateUserStepName = "activate-user";
+    var confirmAndActivate =
+      step(confirmAndActivateStepName)
+        .asyncCall(
+          () -> {
+            enterStep();
+            logger.info("step[{}]: confirming address '{}' and activating user", confirmAndActivateStepName, currentState().createCmd().email());
+            return confirm(confirmEmailStepName)
+              .thenCompose(result -> result.isFailure()
+                ? CompletableFuture.completedFuture(result)
+                : runStep(activateUserStepName, FaultInjector.USER_ENTITY, metadata ->
+                    componentClient
+                      .forEventSourcedEntity(currentState().userId())
+                      .call(UserEntity::activateUser)
+                      .withMetadata(metadata)
+                      .execute())
+                  .thenApply(__ -> result));
+          }
+        )
+        .andThen(
+          Result.class,
+          result -> onConfirmation(confirmEmailStepName, result, removeUserStepName, recordStatusStepName))
+        .timeout(retries.stepTimeout(confirmEmailStepName).plus(retries.stepTimeout(activateUserStepName)));
 
     //---------------------------------------------------------------------------------------------
     var createUserStepName = "create-user";
     var createUser =
       step(createUserStepName)
-        .call(
+        .asyncCall(
           UserEntity.Create.class,
           cmd -> {
+            enterStep();
             logger.info("step[{}]: creating user: {}", createUserStepName, cmd);
-            return componentClient
-              .forEventSourcedEntity(currentState().userId)
-              .call(UserEntity::createUser).params(cmd);
+            // once all attempts failed, the step fails over to un-reserve-email
+            return runStep(createUserStepName, FaultInjector.USER_ENTITY, metadata ->
+              componentClient
+                .forEventSourcedEntity(currentState().userId)
+                .call(UserEntity::createUser).params(cmd)
+                .withMetadata(metadata)
+                .execute());
           }
         )
         // when done, move to email confirmation
         .andThen(
           Done.class,
-          __ -> effects()
-            .updateState(currentState().withStatus(Status.CONFIRMING_EMAIL))
-            .transitionTo(confirmEmail.name()));
+          __ -> {
+            metrics.outcome(createUserStepName, RegistryMetrics.Outcome.SUCCESS);
+            return effects()
+              .updateState(userCreated(currentState()).withStatus(Status.CONFIRMING_EMAIL))
+              .transitionTo(confirmEmail.name());
+          })
+        .timeout(retries.stepTimeout(createUserStepName));
 
 
     //---------------------------------------------------------------------------------------------
@@ -126,10 +357,14 @@ public class UserCreationWorkflow extends Workflow<UserCreationWorkflow.State> {
         .asyncCall(
           UniqueEmailEntity.ReserveEmail.class,
           cmd -> {
+            enterStep();
             logger.info("step[{}]: Reserving address '{}'", reserveEmailStepName, cmd.address());
-            return componentClient
-              .forValueEntity(cmd.address())
-              .call(UniqueEmailEntity::reserve).params(cmd).execute()
+            return runStep(reserveEmailStepName, FaultInjector.UNIQUE_EMAIL_ENTITY, metadata ->
+                componentClient
+                  .forValueEntity(cmd.address())
+                  .call(UniqueEmailEntity::reserve).params(cmd)
+                  .withMetadata(metadata)
+                  .execute())
               .thenApply(__ -> Result.success())
               .exceptionally(__ -> Result.failure("failed to reserve email: '" + cmd.address() + "'"));
           }
@@ -140,47 +375,270 @@ public class UserCreationWorkflow extends Workflow<UserCreationWorkflow.State> {
           result -> {
             if (result instanceof Result.Failure failure) {
               logger.error("step[{}]: failed to reserve email: '{}'", reserveEmailStepName, currentState().createCmd().email());
+              metrics.outcome(reserveEmailStepName, RegistryMetrics.Outcome.RESERVE_FAILURE);
+              var paused =
+                currentState()
+                  .withStatus(Status.PAUSED)
+                  .withErrorMessage(failure.message());
+              recordCompletion(paused);
               return effects()
-                .updateState(
-                  currentState()
-                    .withStatus(Status.PAUSED)
-                    .withErrorMessage(failure.message()))
-                .pause();
+                .updateState(paused)
+                .transitionTo(recordStatusStepName);
             } else {
               logger.info("step[{}]: email '{}' reserved", reserveEmailStepName, currentState().createCmd().email());
+              metrics.outcome(reserveEmailStepName, RegistryMetrics.Outcome.SUCCESS);
               return effects()
                 .updateState(currentState().withStatus(Status.CREATING_USER))
                 .transitionTo(createUser.name(), currentState().createCmd());
             }
-          });
+          })
+        .timeout(retries.stepTimeout(reserveEmailStepName));
 
     //---------------------------------------------------------------------------------------------
     // this is a failover step, it will be executed if we fail to create the user
     var unReserveEmailStepName = "un-reserve-email";
     var unReserveEmail =
       step(unReserveEmailStepName)
-        .call(
+        .asyncCall(
           () -> {
+            enterStep();
             logger.info("step[{}]: deleting email reservation: '{}'", unReserveEmailStepName, currentState().createCmd().email());
-            return componentClient
-              .forValueEntity(currentState().createCmd().email())
-              .call(UniqueEmailEntity::unReserve);
+            return runStep(unReserveEmailStepName, FaultInjector.UNIQUE_EMAIL_ENTITY, metadata ->
+              componentClient
+                .forValueEntity(currentState().createCmd().email())
+                .call(UniqueEmailEntity::unReserve).params(new UniqueEmailEntity.UnReserveEmail(currentState().userId()))
+                .withMetadata(metadata)
+                .execute());
           }
         )
         // once email reservation is deleted, we can stop the workflow
-        .andThen(Done.class, __ ->
-          effects()
-            .updateState(currentState()
+        .andThen(Done.class, __ -> {
+          metrics.outcome(unReserveEmailStepName, RegistryMetrics.Outcome.FAILOVER);
+          var failed =
+            currentState()
               .withErrorMessage("failed to create user")
-              .withStatus(Status.FAILED))
-            .end());
+              .withStatus(Status.FAILED);
+          recordCompletion(failed);
+          return effects()
+            .updateState(failed)
+            .transitionTo(recordStatusStepName);
+        })
+        .timeout(retries.stepTimeout(unReserveEmailStepName));
 
 
+    //---------------------------------------------------------------------------------------------
+    // speculative mode: reserve the email and create the user at the same time,
+    // then confirm the email or compensate depending on who won
+    var reserveAndCreateStepName = "reserve-email-and-create-user";
+    var reserveAndCreate =
+      step(reserveAndCreateStepName)
+        .asyncCall(
+          UserEntity.Create.class,
+          cmd -> {
+            enterStep();
+            logger.info("step[{}]: reserving address '{}' and creating user: {}", reserveAndCreateStepName, cmd.email(), cmd);
+            var userId = currentState().userId();
+
+            var reservation =
+              runStep(reserveEmailStepName, FaultInjector.UNIQUE_EMAIL_ENTITY, metadata ->
+                  componentClient
+                    .forValueEntity(cmd.email())
+                    .call(UniqueEmailEntity::reserve).params(new UniqueEmailEntity.ReserveEmail(cmd.email(), userId))
+                    .withMetadata(metadata)
+                    .execute())
+                .thenApply(__ -> Optional.<String>empty())
+                .exceptionally(__ -> Optional.of("failed to reserve email: '" + cmd.email() + "'"));
+
+            // a single attempt, a failed creation falls back to the create-user step and its retries.
+            // The user stays provisional, invisible to the projections, until its email is confirmed.
+            var creation =
+              runStepOnce(createUserStepName, FaultInjector.USER_ENTITY, metadata ->
+                  componentClient
+                    .forEventSourcedEntity(userId)
+                    .call(UserEntity::createProvisionalUser).params(cmd)
+                    .withMetadata(metadata)
+                    .execute())
+                .thenApply(__ -> Optional.<String>empty())
+                .exceptionally(error -> Optional.of(error.getMessage()));
+
+            return reservation.thenCombine(creation, SpeculativeResult::new);
+          }
+        )
+        .andThen(
+          SpeculativeResult.class,
+          result -> {
+            var email = currentState().createCmd().email();
+
+            if (result.reservationError().isPresent()) {
+              logger.error("step[{}]: failed to reserve email: '{}'", reserveAndCreateStepName, email);
+              metrics.outcome(reserveEmailStepName, RegistryMetrics.Outcome.RESERVE_FAILURE);
+              var failedReservation = currentState().withErrorMessage(result.reservationError().get());
+
+              if (result.creationError().isPresent()) {
+                var paused = failedReservation.withStatus(Status.PAUSED);
+                recordCompletion(paused);
+                return effects()
+                  .updateState(paused)
+                  .transitionTo(recordStatusStepName);
+              } else {
+                return effects()
+                  .updateState(failedReservation.withStatus(Status.REMOVING_USER))
+                  .transitionTo(removeUser.name());
+              }
+            }
+
+            metrics.outcome(reserveEmailStepName, RegistryMetrics.Outcome.SUCCESS);
+            if (result.creationError().isPresent()) {
+              // email is ours, fall back to the regular creation step with its retries and failover
+              logger.info("step[{}]: email '{}' reserved, user creation failed", reserveAndCreateStepName, email);
+              return effects()
+                .updateState(currentState().withStatus(Status.CREATING_USER))
+                .transitionTo(createUser.name(), currentState().createCmd());
+            } else {
+              logger.info("step[{}]: email '{}' reserved and provisional user created", reserveAndCreateStepName, email);
+              metrics.outcome(createUserStepName, RegistryMetrics.Outcome.SUCCESS);
+              return effects()
+                .updateState(userCreated(currentState()).withStatus(Status.CONFIRMING_EMAIL))
+                .transitionTo(confirmAndActivate.name());
+            }
+          })
+        .timeout(retries.stepTimeout(reserveEmailStepName).plus(retries.stepTimeout(createUserStepName)));
+
     return workflow()
       .addStep(reserveEmail)
+      .addStep(reserveAndCreate)
+      .addStep(removeUser)
       .addStep(unReserveEmail)
-      .addStep(createUser, maxRetries(3).failoverTo(unReserveEmail.name()))
-      .addStep(confirmEmail);
+      // attempts are retried by StepRetries with backoff, Kalix only takes care of the failover
+      .addStep(createUser, maxRetries(0).failoverTo(unReserveEmail.name()))
+      .addStep(confirmEmail)
+      .addStep(confirmAndActivate)
+      .addStep(recordStatus);
+  }
+
+  /**
+   * Runs the call of a step with the retries of the step. The step and each attempt get a span in
+   * the trace of the workflow, the call is made with the context of the attempt.
+   */
+  private <T> CompletionStage<T> runStep(String step, String component, Function<Metadata, CompletionStage<T>> call) {
+    var stepSpan = stepSpan(step);
+    var attempts = new AtomicLong();
+    var res =
+      retries.run(step, () -> {
+        var attemptSpan = tracing.startChild(stepSpan, step + " attempt",
+          Attributes.of(Tracing.WORKFLOW_ID, currentState().userId(), Tracing.STEP, step, Tracing.ATTEMPT, attempts.incrementAndGet()));
+        return tracing.endWhenDone(attemptSpan,
+          metrics.timeStep(step, () ->
+            faults.inject(step, component, () -> call.apply(tracing.metadata(attemptSpan)))));
+      });
+    return tracing.endWhenDone(stepSpan, res);
+  }
+
+  /**
+   * A single attempt of the call of a step, without retries.
+   */
+  private <T> CompletionStage<T> runStepOnce(String step, String component, Function<Metadata, CompletionStage<T>> call) {
+    var stepSpan = stepSpan(step);
+    return tracing.endWhenDone(stepSpan,
+      metrics.timeStep(step, () ->
+        faults.inject(step, component, () -> call.apply(tracing.metadata(stepSpan)))));
+  }
+
+  private Span stepSpan(String step) {
+    return tracing.start(step, currentState().traceparent(), SpanKind.INTERNAL,
+      Attributes.of(Tracing.WORKFLOW_ID, currentState().userId(), Tracing.STEP, step));
+  }
+
+  /**
+   * A step only runs once the state that led to it is persisted, that's when status streams are told
+   * about the transition.
+   */
+  private void publishPersisted() {
+    statusBus.publish(currentState());
+  }
+
+  /**
+   * Entry of every step but record-status: the status the step runs in is published and recorded, so
+   * that running and stuck workflows can be queried too, and a resumed workflow no longer shows as
+   * PAUSED. The recording is best effort, the step doesn't wait for it. A lost recording is replaced
+   * by the one of the next step, or of the outcome, which record-status retries until it succeeds.
+   */
+  private void enterStep() {
+    publishPersisted();
+    var state = currentState();
+    faults.inject(FaultInjector.CREATION_STATUS_ENTITY, () ->
+        componentClient
+          .forValueEntity(state.userId())
+          .call(CreationStatusEntity::record).params(creationStatus(state))
+          .execute())
+      .exceptionally(error -> {
+        logger.warn("Failed to record status {} of workflow (id:{}): {}", state.status(), state.userId(), error.getMessage());
+        return Done.done();
+      });
+  }
+
+  private static CreationStatusEntity.CreationStatus creationStatus(State state) {
+    return new CreationStatusEntity.CreationStatus(
+      state.userId(),
+      state.status().name(),
+      state.errorMessage().orElse(""),
+      Instant.now().toEpochMilli());
+  }
+
+  /**
+   * Confirms the reservation of the email. A lost reservation, expired or taken over by someone else,
+   * doesn't come back by retrying, it's a failed result of the step rather than an error.
+   */
+  private CompletionStage<Result> confirm(String step) {
+    var email = currentState().createCmd().email();
+    return runStep(step, FaultInjector.UNIQUE_EMAIL_ENTITY, metadata ->
+      componentClient
+        .forValueEntity(email)
+        .call(UniqueEmailEntity::confirm).params(new UniqueEmailEntity.ConfirmEmail(currentState().userId()))
+        .withMetadata(metadata)
+        .execute()
+        .thenApply(__ -> Result.success())
+        .exceptionallyCompose(error ->
+          isConflict(error)
+            ? CompletableFuture.completedFuture(Result.failure("reservation of email '" + email + "' was lost"))
+            : CompletableFuture.failedFuture(error)));
+  }
+
+  /**
+   * The workflow is done once the email is confirmed. Otherwise the user is removed and the workflow
+   * pauses, to be started again once the address is free.
+   */
+  private Effect.TransitionalEffect<Void> onConfirmation(String step, Result result, String removeUserStep, String recordStatusStep) {
+    if (result instanceof Result.Failure failure) {
+      logger.error("step[{}]: {}", step, failure.message());
+      metrics.outcome(step, RegistryMetrics.Outcome.RESERVE_FAILURE);
+      return effects()
+        .updateState(currentState().withErrorMessage(failure.message()).withStatus(Status.REMOVING_USER))
+        .transitionTo(removeUserStep);
+    }
+    metrics.outcome(step, RegistryMetrics.Outcome.SUCCESS);
+    var finished = currentState().withStatus(Status.FINISHED);
+    recordCompletion(finished);
+    return effects()
+      .updateState(finished)
+      .transitionTo(recordStatusStep);
+  }
+
+  private static boolean isConflict(Throwable error) {
+    var cause = error instanceof CompletionException ? error.getCause() : error;
+    return cause instanceof DeferredCallResponseException response
+      && response.errorCode() == StatusCode.ErrorCode.CONFLICT;
+  }
+
+  private State userCreated(State state) {
+    return settings.compactState() ? state.withoutUserDetails() : state;
+  }
+
+  private void recordCompletion(State state) {
+    // states persisted before the start time was tracked don't have it
+    if (state.startedAt() != null) {
+      metrics.workflowCompleted(state.status().name(), Duration.between(state.startedAt(), Instant.now()));
+    }
   }
 
 
@@ -0,0 +1,43 @@
+package user.registry.cache;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * In-process cache of confirmed email addresses and their owners, fed by the changes of
+ * UniqueEmailEntity. Only confirmed addresses are kept, they are used to reject registrations for
+ * emails that are obviously taken.
+ * <p>
+ * There is one cache per service instance, but each change is delivered to a single instance. An
+ * address released on another instance is still seen as taken until it expires, the TTL is how long
+ * a registration for a freed address can be rejected. It's never used to answer queries about the
+ * address, those go to UniqueEmailEntity.
+ */
+public class ConfirmedEmails {
+
+  private final LruCache<String, String> owners;
+
+  public ConfirmedEmails(int maxSize, Duration ttl) {
+    this.owners = new LruCache<>(maxSize, ttl);
+  }
+
+  public Optional<String> ownerOf(String address) {
+    return owners.get(address);
+  }
+
+  public boolean isTakenByOtherThan(String address, String ownerId) {
+    return ownerOf(address).map(owner -> !owner.equals(ownerId)).orElse(false);
+  }
+
+  public void confirmed(String address, String ownerId) {
+    owners.put(address, ownerId);
+  }
+
+  public void released(String address) {
+    owners.invalidate(address);
+  }
+
+  public LruCache<String, String> cache() {
+    return owners;
+  }
+}
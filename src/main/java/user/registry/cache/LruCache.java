@@ -0,0 +1,90 @@
+package user.registry.cache;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small thread-safe LRU cache with an optional time-to-live per entry. Keeps hit, miss and
+ * eviction counters so it can be sized from metrics.
+ */
+public class LruCache<K, V> {
+
+  private record Entry<V>(V value, Instant expiresAt) {}
+
+  private final int maxSize;
+  private final Duration ttl;
+  private final Clock clock;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  private final LinkedHashMap<K, Entry<V>> entries;
+
+  /**
+   * @param ttl how long an entry stays valid, Duration.ZERO for no expiry
+   */
+  public LruCache(int maxSize, Duration ttl, Clock clock) {
+    this.maxSize = maxSize;
+    this.ttl = ttl;
+    this.clock = clock;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+        var evict = size() > LruCache.this.maxSize;
+        if (evict) evictions.incrementAndGet();
+        return evict;
+      }
+    };
+  }
+
+  public LruCache(int maxSize, Duration ttl) {
+    this(maxSize, ttl, Clock.systemUTC());
+  }
+
+  public synchronized Optional<V> get(K key) {
+    var entry = entries.get(key);
+    if (entry == null) {
+      misses.incrementAndGet();
+      return Optional.empty();
+    }
+    if (entry.expiresAt() != null && !clock.instant().isBefore(entry.expiresAt())) {
+      entries.remove(key);
+      evictions.incrementAndGet();
+      misses.incrementAndGet();
+      return Optional.empty();
+    }
+    hits.incrementAndGet();
+    return Optional.of(entry.value());
+  }
+
+  public synchronized void put(K key, V value) {
+    var expiresAt = ttl.isZero() ? null : clock.instant().plus(ttl);
+    entries.put(key, new Entry<>(value, expiresAt));
+  }
+
+  public synchronized void invalidate(K key) {
+    entries.remove(key);
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public long hits() {
+    return hits.get();
+  }
+
+  public long misses() {
+    return misses.get();
+  }
+
+  public long evictions() {
+    return evictions.get();
+  }
+}
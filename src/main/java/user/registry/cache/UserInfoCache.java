@@ -0,0 +1,74 @@
+package user.registry.cache;
+
+import user.registry.api.UserInfo;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Read-through cache of user profiles served by ApplicationController, one per service instance.
+ * Entries are invalidated by the user events, but each event is delivered to a single instance: the
+ * others keep serving the previous profile until it expires. The TTL is the consistency bound of
+ * GET /api/users/{userId}.
+ * <p>
+ * A profile read before an invalidation of the same user isn't cached, see {@link #stamp()}.
+ */
+public class UserInfoCache {
+
+  private final LruCache<String, UserInfo> users;
+  private final int maxSize;
+  private long invalidations;
+  // when each user was last invalidated, only for the most recently invalidated users
+  private final LinkedHashMap<String, Long> invalidatedAt;
+  // the users forgotten by invalidatedAt were invalidated at this point at the latest
+  private long forgottenUpTo;
+
+  public UserInfoCache(int maxSize, Duration ttl) {
+    this.users = new LruCache<>(maxSize, ttl);
+    this.maxSize = maxSize;
+    this.invalidatedAt = new LinkedHashMap<>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+        var forget = size() > UserInfoCache.this.maxSize;
+        if (forget) forgottenUpTo = eldest.getValue();
+        return forget;
+      }
+    };
+  }
+
+  public Optional<UserInfo> get(String userId) {
+    return users.get(userId);
+  }
+
+  /**
+   * To take before reading a profile and to pass to {@link #put(UserInfo, long)}, so that a profile
+   * read concurrently with an invalidation of the user doesn't overwrite it.
+   */
+  public synchronized long stamp() {
+    return invalidations;
+  }
+
+  /**
+   * Caches the profile only if the user wasn't invalidated since the stamp was taken. A user that
+   * isn't tracked anymore counts as invalidated when the last forgotten user was.
+   */
+  public synchronized void put(UserInfo userInfo, long stamp) {
+    if (invalidatedAt.getOrDefault(userInfo.id(), forgottenUpTo) <= stamp) {
+      users.put(userInfo.id(), userInfo);
+    }
+  }
+
+  public synchronized void invalidate(String userId) {
+    invalidations++;
+    // re-inserted so that the map stays ordered by invalidation
+    invalidatedAt.remove(userId);
+    invalidatedAt.put(userId, invalidations);
+    users.invalidate(userId);
+  }
+
+  public LruCache<String, UserInfo> cache() {
+    return users;
+  }
+}
@@ -0,0 +1,93 @@
+package user.registry.entities;
+
+
+import kalix.javasdk.annotations.Acl;
+import kalix.javasdk.annotations.Id;
+import kalix.javasdk.annotations.TypeId;
+import kalix.javasdk.valueentity.ValueEntity;
+import org.springframework.web.bind.annotation.*;
+import user.registry.Done;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One shard of the user count of a country, identified by '{country}:{shard}'. Users are spread over
+ * the shards of their country so a popular country isn't a single write hotspot.
+ * <p>
+ * Updates are delivered at least once. A redelivery replays the updates since the last offset
+ * committed by CountryCountersSubscriber, so only the last few updates of a shard come back. The shard
+ * remembers the keys of its last RECENT_UPDATES updates and ignores their redeliveries. The window is
+ * kept small because the whole state is written on every update, an update redelivered after that
+ * many later updates of the same shard is counted twice.
+ */
+@Id("id")
+@TypeId("country-counter")
+@RequestMapping("/country-counters/{id}")
+@Acl(allow = @Acl.Matcher(service = "*"))
+public class CountryCounterEntity extends ValueEntity<CountryCounterEntity.CountryCounter> {
+
+  static final int RECENT_UPDATES = 32;
+
+  /**
+   * @param recentUpdates keys of the last updates applied, oldest first
+   */
+  public record CountryCounter(String country, int shard, long count, List<String> recentUpdates) {
+
+    public boolean alreadyApplied(String updateKey) {
+      return recentUpdates.contains(updateKey);
+    }
+
+    public CountryCounter apply(Update update) {
+      var recent = new ArrayList<>(recentUpdates);
+      // a user added after being removed (or the reverse) must count again
+      recent.remove(update.undoKey());
+      recent.add(update.key());
+      // states written with a larger window shrink on their next update
+      var kept = recent.subList(Math.max(0, recent.size() - RECENT_UPDATES), recent.size());
+      return new CountryCounter(country, shard, count + update.delta(), List.copyOf(kept));
+    }
+  }
+
+  /**
+   * @param userId  the user added (delta 1) or removed (delta -1)
+   * @param eventId id of the user event behind the update, the same for its redeliveries. Absent in
+   *                updates sent before it was added, those are keyed on the delta only.
+   */
+  public record Update(String country, int shard, String userId, int delta, String eventId) {
+
+    public String key() {
+      return eventId != null
+        ? userId + "@" + eventId
+        : userId + (delta > 0 ? ":added" : ":removed");
+    }
+
+    public String undoKey() {
+      return userId + (delta > 0 ? ":removed" : ":added");
+    }
+
+    public static String counterId(String country, int shard) {
+      return country + ":" + shard;
+    }
+  }
+
+  @PostMapping
+  public Effect<Done> update(@RequestBody Update update) {
+    var counter =
+      currentState() != null
+        ? currentState()
+        : new CountryCounter(update.country(), update.shard(), 0, List.of());
+
+    if (counter.alreadyApplied(update.key())) {
+      return effects().reply(Done.done());
+    }
+    return effects()
+      .updateState(counter.apply(update))
+      .thenReply(Done.done());
+  }
+
+  @GetMapping
+  public Effect<CountryCounter> getState() {
+    return effects().reply(currentState());
+  }
+}
@@ -0,0 +1,45 @@
+package user.registry.entities;
+
+
+import kalix.javasdk.annotations.Acl;
+import kalix.javasdk.annotations.Id;
+import kalix.javasdk.annotations.TypeId;
+import kalix.javasdk.valueentity.ValueEntity;
+import org.springframework.web.bind.annotation.*;
+import user.registry.Done;
+
+/**
+ * Last status of the creation workflow of a user, so that workflows can be queried in bulk through
+ * CreationStatusView, e.g. the ones stuck in CREATING_USER for a while. Each step records the status it
+ * runs in when it starts, the outcome, PAUSED, FINISHED or FAILED, is recorded by the workflow's
+ * record-status step.
+ */
+@Id("id")
+@TypeId("creation-status")
+@RequestMapping("/creation-statuses/{id}")
+@Acl(allow = @Acl.Matcher(service = "*"))
+public class CreationStatusEntity extends ValueEntity<CreationStatusEntity.CreationStatus> {
+
+  /**
+   * @param errorMessage empty when there is no error
+   * @param updatedAt    epoch millis of the transition
+   */
+  public record CreationStatus(String userId, String status, String errorMessage, long updatedAt) {
+  }
+
+  @PutMapping
+  public Effect<Done> record(@RequestBody CreationStatus status) {
+    // a retried recording may arrive after a newer one, ignore it
+    if (currentState() != null && currentState().updatedAt() > status.updatedAt()) {
+      return effects().reply(Done.done());
+    }
+    return effects()
+      .updateState(status)
+      .thenReply(Done.done());
+  }
+
+  @GetMapping
+  public Effect<CreationStatus> getState() {
+    return effects().reply(currentState());
+  }
+}
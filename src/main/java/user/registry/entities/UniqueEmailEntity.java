@@ -1,6 +1,8 @@
 package user.registry.entities;
 
 
+import io.vavr.control.Either;
+import kalix.javasdk.StatusCode;
 import kalix.javasdk.annotations.Acl;
 import kalix.javasdk.annotations.Id;
 import kalix.javasdk.annotations.TypeId;
@@ -11,6 +13,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.web.bind.annotation.*;
 import user.registry.Done;
 
+import java.time.Instant;
 import java.util.Optional;
 
 @Id("id")
@@ -34,10 +37,15 @@ public class UniqueEmailEntity extends ValueEntity<UniqueEmailEntity.UniqueEmail
 
   @Override
   public UniqueEmail emptyState() {
-    return new UniqueEmail(address, Status.NOT_USED, Optional.empty());
+    return UniqueEmail.notUsed(address);
   }
 
-  public record UniqueEmail(String address, Status status, Optional<String> ownerId) {
+  public record UniqueEmail(String address, Status status, Optional<String> ownerId, Optional<Instant> reservedAt) {
+
+    public UniqueEmail {
+      // states persisted before reservations were timestamped don't have it
+      if (reservedAt == null) reservedAt = Optional.empty();
+    }
 
     public boolean sameOwner(String ownerId) {
       return this.ownerId.isPresent() && this.ownerId.get().equals(ownerId);
@@ -48,7 +56,7 @@ public class UniqueEmailEntity extends ValueEntity<UniqueEmailEntity.UniqueEmail
     }
 
     public UniqueEmail asConfirmed() {
-      return new UniqueEmail(address, Status.CONFIRMED, ownerId);
+      return new UniqueEmail(address, Status.CONFIRMED, ownerId, reservedAt);
     }
 
     public boolean isInUse() {
@@ -58,51 +66,162 @@ public class UniqueEmailEntity extends ValueEntity<UniqueEmailEntity.UniqueEmail
     public boolean isReserved() {
       return status == Status.RESERVED;
     }
+
+    public static UniqueEmail notUsed(String address) {
+      return new UniqueEmail(address, Status.NOT_USED, Optional.empty(), Optional.empty());
+    }
+
+    // The command handlers below return this same instance when the command doesn't change anything.
+
+    public Either<String, UniqueEmail> onCommand(ReserveEmail cmd, Instant now) {
+      if (isInUse() && notSameOwner(cmd.ownerId()))
+        return Either.left("Email is already reserved");
+      else if (sameOwner(cmd.ownerId()))
+        return Either.right(this);
+      else
+        return Either.right(new UniqueEmail(cmd.address(), Status.RESERVED, Optional.of(cmd.ownerId()), Optional.of(now)));
+    }
+
+    /**
+     * Reserves and confirms in one go.
+     */
+    public Either<String, UniqueEmail> onAssign(ReserveEmail cmd) {
+      if (isInUse() && notSameOwner(cmd.ownerId()))
+        return Either.left("Email is already reserved");
+      else if (sameOwner(cmd.ownerId()) && !isReserved())
+        return Either.right(this);
+      else
+        return Either.right(new UniqueEmail(cmd.address(), Status.CONFIRMED, Optional.of(cmd.ownerId()), reservedAt));
+    }
+
+    /**
+     * Confirming again is a no-op, but a reservation that expired or went to someone else in the
+     * meantime can't be confirmed.
+     */
+    public Either<String, UniqueEmail> onCommand(ConfirmEmail cmd) {
+      if (notSameOwner(cmd.ownerId()))
+        return Either.left("Email reservation was lost");
+      else
+        return Either.right(isReserved() ? asConfirmed() : this);
+    }
+
+    /**
+     * A reservation that expired and went to someone else in the meantime isn't theirs to undo.
+     */
+    public UniqueEmail onCommand(UnReserveEmail cmd) {
+      return isReserved() && sameOwner(cmd.ownerId()) ? notUsed(address) : this;
+    }
+
+    public UniqueEmail onCommand(ReleaseEmail cmd) {
+      return isInUse() && sameOwner(cmd.ownerId()) ? notUsed(address) : this;
+    }
+
+    public UniqueEmail onCommand(ExpireReservation cmd) {
+      var sameReservation = reservedAt.map(Instant::toEpochMilli).orElse(0L) == cmd.reservedAt();
+      return isReserved() && sameReservation ? notUsed(address) : this;
+    }
   }
 
   public record ReserveEmail(String address, String ownerId) {
   }
 
-  @PostMapping("/reserve")
-  public Effect<Done> reserve(@RequestBody ReserveEmail cmd) {
-    if (currentState().isInUse() && currentState().notSameOwner(cmd.ownerId)) {
-      return effects().error("Email is already reserved");
-    }
+  public record ConfirmEmail(String ownerId) {
+  }
 
-    if (currentState().sameOwner(cmd.ownerId)) {
-      return effects().reply(Done.done());
-    }
+  /**
+   * Undoes the reservation, only if it's still reserved by ownerId.
+   */
+  public record UnReserveEmail(String ownerId) {
+  }
 
-    logger.info("Reserving address '{}'", cmd.address());
-    return effects()
-      .updateState(new UniqueEmail(cmd.address, Status.RESERVED, Optional.of(cmd.ownerId)))
-      .thenReply(Done.done());
+  /**
+   * Releases the address only if it's still owned by ownerId.
+   */
+  public record ReleaseEmail(String ownerId) {
+  }
+
+  /**
+   * Expires the reservation made at reservedAt (epoch millis), if it's still the current one.
+   */
+  public record ExpireReservation(long reservedAt) {
+  }
+
+  /**
+   * Whether an expire command actually reclaimed the address.
+   */
+  public record Expiration(boolean reclaimed) {
+  }
+
+  @PostMapping("/reserve")
+  public Effect<Done> reserve(@RequestBody ReserveEmail cmd) {
+    return currentState().onCommand(cmd, Instant.now())
+      .fold(
+        error -> effects().error(error),
+        reserved -> {
+          if (reserved == currentState()) {
+            return effects().reply(Done.done());
+          }
+          logger.info("Reserving address '{}'", cmd.address());
+          return effects()
+            .updateState(reserved)
+            .thenReply(Done.done());
+        });
   }
 
+  /**
+   * Fails with CONFLICT if the address isn't reserved or confirmed by the owner anymore.
+   */
   @PostMapping("/confirm")
-  public Effect<Done> confirm() {
-    if (currentState().isReserved()) {
-      logger.info("Email is reserved, confirming address '{}'", currentState().address);
-      return effects()
-        .updateState(currentState().asConfirmed())
-        .thenReply(Done.done());
-    } else {
-      logger.info("Email status is not reserved. Ignoring confirmation request.");
-      return effects().reply(Done.done());
-    }
+  public Effect<Done> confirm(@RequestBody ConfirmEmail cmd) {
+    return currentState().onCommand(cmd)
+      .fold(
+        error -> {
+          logger.info("Address '{}' isn't reserved by '{}' anymore, can't confirm it", currentState().address, cmd.ownerId());
+          return effects().error(error, StatusCode.ErrorCode.CONFLICT);
+        },
+        confirmed -> update(confirmed, "Email is reserved, confirming address '{}'"));
+  }
+
+  /**
+   * Reserves and confirms the address in one go, used when a user changes its email outside of the
+   * creation workflow. Fails if the address is in use by someone else.
+   */
+  @PostMapping("/assign")
+  public Effect<Done> assign(@RequestBody ReserveEmail cmd) {
+    return currentState().onAssign(cmd)
+      .fold(
+        error -> effects().error(error),
+        assigned -> {
+          if (assigned == currentState()) {
+            return effects().reply(Done.done());
+          }
+          logger.info("Assigning address '{}'", cmd.address());
+          return effects()
+            .updateState(assigned)
+            .thenReply(Done.done());
+        });
   }
 
+  @PostMapping("/release")
+  public Effect<Done> release(@RequestBody ReleaseEmail cmd) {
+    return update(currentState().onCommand(cmd), "Releasing address '{}'");
+  }
 
   @PostMapping()
-  public Effect<Done> unReserve() {
-    if (currentState().isReserved()) {
-      logger.info("Un-reserving address '{}'", currentState().address);
-      return effects()
-        .updateState(emptyState())
-        .thenReply(Done.done());
-    } else {
-      return effects().reply(Done.done());
+  public Effect<Done> unReserve(@RequestBody UnReserveEmail cmd) {
+    return update(currentState().onCommand(cmd), "Un-reserving address '{}'");
+  }
+
+  @PostMapping("/expire")
+  public Effect<Expiration> expire(@RequestBody ExpireReservation cmd) {
+    var expired = currentState().onCommand(cmd);
+    if (expired == currentState()) {
+      return effects().reply(new Expiration(false));
     }
+    logger.info("Reservation of address '{}' expired", currentState().address);
+    return effects()
+      .updateState(expired)
+      .thenReply(new Expiration(true));
   }
 
   @DeleteMapping()
@@ -119,4 +238,14 @@ public class UniqueEmailEntity extends ValueEntity<UniqueEmailEntity.UniqueEmail
     return effects().reply(currentState());
   }
 
+  private Effect<Done> update(UniqueEmail updated, String logMessage) {
+    if (updated == currentState()) {
+      return effects().reply(Done.done());
+    }
+    logger.info(logMessage, currentState().address);
+    return effects()
+      .updateState(updated)
+      .thenReply(Done.done());
+  }
+
 }
@@ -1,6 +1,7 @@
 package user.registry.entities;
 
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import io.vavr.collection.List;
 import io.vavr.control.Either;
 import kalix.javasdk.StatusCode;
@@ -11,7 +12,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.web.bind.annotation.*;
 import user.registry.Done;
 
-import java.util.Random;
+import java.util.Objects;
+import java.util.Optional;
 
 @Id("id")
 @TypeId("user")
@@ -22,6 +24,7 @@ public class UserEntity extends EventSourcedEntity<UserEntity.User, UserEntity.E
   private final Logger logger = LoggerFactory.getLogger(getClass());
 
   // commands
+  @JsonInclude(JsonInclude.Include.NON_NULL)
   public record Create(String name, String country, String email) {}
   public record ChangeEmail(String newEmail) {}
 
@@ -29,17 +32,42 @@ public class UserEntity extends EventSourcedEntity<UserEntity.User, UserEntity.E
   public sealed interface Event {}
   @TypeName("user-created")
   public record UserWasCreated(String name, String country, String email) implements Event {}
+  /**
+   * previousEmail is absent when the email is assigned on creation, and in events written before it was tracked.
+   */
   @TypeName("email-assigned")
-  public record EmailAssigned( String newEmail) implements Event {}
+  @JsonInclude(JsonInclude.Include.NON_ABSENT)
+  public record EmailAssigned(String newEmail, Optional<String> previousEmail) implements Event {
+    public EmailAssigned {
+      if (previousEmail == null) previousEmail = Optional.empty();
+    }
+  }
   @TypeName("email-unassigned")
   public record EmailUnassigned(String oldEmail) implements Event {}
+  @TypeName("user-removed")
+  public record UserWasRemoved(String country, String email) implements Event {}
+  /**
+   * A user created by the speculative workflow step before its email is known to be held. Projections
+   * ignore it, the user only becomes visible with the UserWasCreated of its activation.
+   */
+  @TypeName("provisional-user-created")
+  public record ProvisionalUserCreated(String name, String country, String email) implements Event {}
+  @TypeName("provisional-user-discarded")
+  public record ProvisionalUserDiscarded() implements Event {}
+
+  /**
+   * @param provisional created by the speculative step and not activated yet, absent in snapshots written before
+   */
+  public record User(String name, String country, String email, boolean provisional) {
 
-  public record User(String name, String country, String email) {
+    public User(String name, String country, String email) {
+      this(name, country, email, false);
+    }
 
     static public List<Event> onCommand(Create cmd) {
       return List.of(
         new UserWasCreated(cmd.name(), cmd.country(), cmd.email()),
-        new EmailAssigned(cmd.email)
+        new EmailAssigned(cmd.email, Optional.empty())
       );
     }
 
@@ -47,12 +75,31 @@ public class UserEntity extends EventSourcedEntity<UserEntity.User, UserEntity.E
       return new User(evt.name, evt.country, evt.email);
     }
 
+    static public Event onProvisionalCommand(Create cmd) {
+      return new ProvisionalUserCreated(cmd.name(), cmd.country(), cmd.email());
+    }
+
+    static public User onEvent(ProvisionalUserCreated evt) {
+      return new User(evt.name(), evt.country(), evt.email(), true);
+    }
+
+    /**
+     * The events making a provisional user a regular one, the same as those of a direct creation.
+     */
+    public List<Event> onActivate() {
+      return onCommand(new Create(name, country, email));
+    }
+
+    public boolean sameAs(Create cmd) {
+      return Objects.equals(name, cmd.name()) && Objects.equals(country, cmd.country()) && Objects.equals(email, cmd.email());
+    }
+
     public Either<String, List<Event>> onCommand(ChangeEmail cmd) {
       if(cmd.newEmail().equals(email))
         return Either.left("Email is the same as the current one");
       else
         return Either.right(List.of(
-          new EmailAssigned(cmd.newEmail()),
+          new EmailAssigned(cmd.newEmail(), Optional.of(email)),
           new EmailUnassigned(email)
         ));
     }
@@ -60,37 +107,30 @@ public class UserEntity extends EventSourcedEntity<UserEntity.User, UserEntity.E
     public User onEvent(EmailAssigned evt) {
       return new User(name, country,  evt.newEmail());
     }
-  }
 
-  /**
-   * Hidden gem to allows us to simulate random failures.
-   * If user ID is a negative integer, we randomly let it fail.
-   */
-  private boolean randomFailure() {
-    try {
-      var i = Integer.parseInt(commandContext().entityId());
-      var random = new Random();
-      return i < 0 && random.nextBoolean();
-    } catch (NumberFormatException e) {
-      // never fail if chosen ID is not a number
-      return false;
+    public Event onRemove() {
+      return provisional ? new ProvisionalUserDiscarded() : new UserWasRemoved(country, email);
     }
   }
 
-
   @PostMapping
   public Effect<Done> createUser(@RequestBody Create cmd) {
 
-    // forces some random failures for demo
-    if (randomFailure()) {
-      return effects().error("Random failure", StatusCode.ErrorCode.BAD_REQUEST);
-    }
-
     if (cmd.name() == null) {
       return effects().error("Name is empty", StatusCode.ErrorCode.BAD_REQUEST);
     }
 
     logger.info("Creating user {}", cmd);
+    if (currentState() != null && currentState().provisional() && currentState().sameAs(cmd)) {
+      // the speculative creation made it after all, it only needs to be activated
+      return effects()
+        .emitEvents(currentState().onActivate().asJava())
+        .thenReply(__ -> Done.done());
+    }
+    if (currentState() != null && currentState().sameAs(cmd)) {
+      // an attempt that timed out may have been applied, its retry succeeds without a second creation
+      return effects().reply(Done.done());
+    }
     if (currentState() != null) {
       return effects().error("User already created", StatusCode.ErrorCode.BAD_REQUEST);
     }
@@ -99,9 +139,43 @@ public class UserEntity extends EventSourcedEntity<UserEntity.User, UserEntity.E
       .thenReply(__ -> Done.done());
   }
 
+  /**
+   * Creates the user without making it visible, used by the speculative workflow step while the
+   * reservation of its email is still in progress. It's then activated or removed.
+   */
+  @PostMapping("/provisional")
+  public Effect<Done> createProvisionalUser(@RequestBody Create cmd) {
+
+    if (cmd.name() == null) {
+      return effects().error("Name is empty", StatusCode.ErrorCode.BAD_REQUEST);
+    }
+
+    logger.info("Creating provisional user {}", cmd);
+    if (currentState() != null) {
+      return effects().error("User already created", StatusCode.ErrorCode.BAD_REQUEST);
+    }
+    return effects()
+      .emitEvent(User.onProvisionalCommand(cmd))
+      .thenReply(__ -> Done.done());
+  }
+
+  @PostMapping("/activate")
+  public Effect<Done> activateUser() {
+    if (currentState() == null) {
+      return effects().error("User not found", StatusCode.ErrorCode.NOT_FOUND);
+    }
+    if (!currentState().provisional()) {
+      return effects().reply(Done.done());
+    }
+    logger.info("Activating user {}", commandContext().entityId());
+    return effects()
+      .emitEvents(currentState().onActivate().asJava())
+      .thenReply(__ -> Done.done());
+  }
+
   @PutMapping("/change-email")
   public Effect<Done> changeEmail(@RequestBody ChangeEmail cmd) {
-    if (currentState() == null) {
+    if (currentState() == null || currentState().provisional()) {
       return effects().error("User not found", StatusCode.ErrorCode.NOT_FOUND);
     }
     return currentState().onCommand(cmd)
@@ -112,9 +186,24 @@ public class UserEntity extends EventSourcedEntity<UserEntity.User, UserEntity.E
   }
 
 
+  /**
+   * Removes a user again, used to compensate a speculative creation. A provisional user is discarded
+   * without the projections ever seeing it.
+   */
+  @DeleteMapping
+  public Effect<Done> removeUser() {
+    if (currentState() == null) {
+      return effects().reply(Done.done());
+    }
+    logger.info("Removing user {}", commandContext().entityId());
+    return effects()
+      .emitEvent(currentState().onRemove())
+      .thenReply(__ -> Done.done());
+  }
+
   @GetMapping
   public Effect<User> getState() {
-    if (currentState() == null) {
+    if (currentState() == null || currentState().provisional()) {
       return effects().error("User not found", StatusCode.ErrorCode.NOT_FOUND);
     }
     return effects().reply(currentState());
@@ -122,18 +211,45 @@ public class UserEntity extends EventSourcedEntity<UserEntity.User, UserEntity.E
 
   @EventHandler
   public User onEvent(UserWasCreated evt) {
-    return User.onEvent(evt);
+    return applyEvent(currentState(), evt);
   }
 
   @EventHandler
   public User onEvent(EmailAssigned evt) {
-    return currentState().onEvent(evt);
+    return applyEvent(currentState(), evt);
   }
 
-
   @EventHandler
   public User onEvent(EmailUnassigned evt) {
-    return currentState();
+    return applyEvent(currentState(), evt);
+  }
+
+  @EventHandler
+  public User onEvent(UserWasRemoved evt) {
+    return applyEvent(currentState(), evt);
+  }
+
+  @EventHandler
+  public User onEvent(ProvisionalUserCreated evt) {
+    return applyEvent(currentState(), evt);
+  }
+
+  @EventHandler
+  public User onEvent(ProvisionalUserDiscarded evt) {
+    return applyEvent(currentState(), evt);
+  }
+
+  /**
+   * The state after the event, for the event handlers above and for replaying a journal outside of
+   * Kalix, e.g. in benchmarks.
+   */
+  public static User applyEvent(User state, Event event) {
+    if (event instanceof UserWasCreated created) return User.onEvent(created);
+    if (event instanceof ProvisionalUserCreated created) return User.onEvent(created);
+    if (event instanceof EmailAssigned assigned) return state.onEvent(assigned);
+    if (event instanceof EmailUnassigned) return state;
+    if (event instanceof UserWasRemoved || event instanceof ProvisionalUserDiscarded) return null;
+    throw new IllegalArgumentException("Unknown event " + event);
   }
 
 }
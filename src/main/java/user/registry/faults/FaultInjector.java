@@ -0,0 +1,103 @@
+package user.registry.faults;
+
+import user.registry.Settings;
+import user.registry.metrics.RegistryMetrics;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Adds latency to and fails calls on purpose, to see how retries, failover and throughput behave
+ * under slow or flaky components.
+ * <p>
+ * Entities can't be injected with beans, so faults are applied where they are called: in the
+ * workflow steps and in the controller. A target is a component, {@link #USER_ENTITY},
+ * {@link #UNIQUE_EMAIL_ENTITY} or {@link #CREATION_STATUS_ENTITY}, or the name of a workflow step.
+ */
+public class FaultInjector {
+
+  public static final String USER_ENTITY = "user-entity";
+  public static final String UNIQUE_EMAIL_ENTITY = "unique-email-entity";
+  public static final String CREATION_STATUS_ENTITY = "creation-status-entity";
+
+  // 99th percentile of the standard normal distribution
+  private static final double Z_99 = 2.326;
+
+  /**
+   * Failure of a call that was failed on purpose.
+   */
+  public static class InjectedFault extends RuntimeException {
+    public InjectedFault(String target) {
+      super("Injected failure of '" + target + "'");
+    }
+  }
+
+  private final RegistryMetrics metrics;
+  private volatile Settings.Faults faults;
+
+  public FaultInjector(Settings settings, RegistryMetrics metrics) {
+    this.faults = settings.faults();
+    this.metrics = metrics;
+  }
+
+  public Settings.Faults current() {
+    return faults;
+  }
+
+  public void update(Settings.Faults faults) {
+    this.faults = new Settings.Faults(faults.enabled(), Map.copyOf(faults.targets()));
+  }
+
+  /**
+   * Runs the call after the latency of the target, or fails instead of running it.
+   */
+  public <T> CompletionStage<T> inject(String target, Supplier<CompletionStage<T>> call) {
+    var current = faults;
+    var fault = current.targets().get(target);
+    if (!current.enabled() || fault == null) {
+      return call.get();
+    }
+
+    var random = ThreadLocalRandom.current();
+    var failed = random.nextDouble() < fault.errorRate();
+    var latency = latency(fault, random);
+
+    if (failed) metrics.faultInjected(target, "error");
+    if (!latency.isZero()) metrics.faultInjected(target, "latency");
+
+    if (latency.isZero()) {
+      return failed ? CompletableFuture.failedFuture(new InjectedFault(target)) : call.get();
+    }
+
+    var delayed = CompletableFuture.delayedExecutor(latency.toNanos(), TimeUnit.NANOSECONDS);
+    return CompletableFuture.runAsync(() -> {}, delayed)
+      .thenCompose(__ -> failed ? CompletableFuture.failedFuture(new InjectedFault(target)) : call.get());
+  }
+
+  /**
+   * Applies the faults of a workflow step and then those of the component it calls.
+   */
+  public <T> CompletionStage<T> inject(String step, String component, Supplier<CompletionStage<T>> call) {
+    return inject(step, () -> inject(component, call));
+  }
+
+  /**
+   * Log-normal latency with the median and 99th percentile of the fault, most calls are a bit slow
+   * and a few are very slow.
+   */
+  public static Duration latency(Settings.Fault fault, Random random) {
+    var median = fault.latency().toNanos();
+    var p99 = fault.latencyP99().toNanos();
+    if (median <= 0) return Duration.ZERO;
+    if (p99 <= median) return fault.latency();
+
+    var sigma = Math.log((double) p99 / median) / Z_99;
+    return Duration.ofNanos((long) (median * Math.exp(sigma * random.nextGaussian())));
+  }
+}
@@ -0,0 +1,53 @@
+package user.registry.faults;
+
+import kalix.javasdk.StatusCode;
+import kalix.javasdk.action.Action;
+import kalix.javasdk.annotations.Acl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import user.registry.Settings;
+
+/**
+ * Reads and replaces the faults injected by {@link FaultInjector}. Durations are ISO-8601, e.g.
+ * <pre>
+ *   {"enabled": true, "targets": {"create-user": {"errorRate": 0.3, "latency": "PT0.05S", "latencyP99": "PT1S"}}}
+ * </pre>
+ * The faults are kept in memory, a change only applies to the instance serving the request and is
+ * lost on restart.
+ */
+@RequestMapping("/admin/faults")
+@Acl(allow = @Acl.Matcher(service = "*"))
+public class FaultsController extends Action {
+
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  private final FaultInjector faults;
+
+  public FaultsController(FaultInjector faults) {
+    this.faults = faults;
+  }
+
+  @GetMapping
+  public Effect<Settings.Faults> getFaults() {
+    return effects().reply(faults.current());
+  }
+
+  @PutMapping
+  public Effect<Settings.Faults> setFaults(@RequestBody Settings.Faults update) {
+    if (update.targets() == null) {
+      return effects().error("Targets are missing", StatusCode.ErrorCode.BAD_REQUEST);
+    }
+    for (var fault : update.targets().values()) {
+      if (fault.errorRate() < 0 || fault.errorRate() > 1 || fault.latency() == null || fault.latencyP99() == null) {
+        return effects().error("Invalid fault " + fault, StatusCode.ErrorCode.BAD_REQUEST);
+      }
+    }
+
+    logger.info("Injecting faults: {}", update);
+    faults.update(update);
+    return effects().reply(faults.current());
+  }
+}
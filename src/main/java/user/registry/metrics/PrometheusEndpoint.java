@@ -0,0 +1,48 @@
+package user.registry.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import user.registry.Settings;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves the Prometheus scrape output on a dedicated port. Kalix endpoints only speak JSON, so the
+ * text exposition format can't be served through an Action.
+ */
+public class PrometheusEndpoint {
+
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  private final PrometheusMeterRegistry registry;
+  private final Settings.Metrics settings;
+  private HttpServer server;
+
+  public PrometheusEndpoint(PrometheusMeterRegistry registry, Settings settings) {
+    this.registry = registry;
+    this.settings = settings.metrics();
+  }
+
+  public void start() throws IOException {
+    if (!settings.enabled()) return;
+
+    server = HttpServer.create(new InetSocketAddress(settings.port()), 0);
+    server.createContext("/metrics", exchange -> {
+      var body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+      exchange.sendResponseHeaders(200, body.length);
+      try (var out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.start();
+    logger.info("Serving metrics on port {}", settings.port());
+  }
+
+  public void stop() {
+    if (server != null) server.stop(0);
+  }
+}
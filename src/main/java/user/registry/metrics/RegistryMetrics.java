@@ -0,0 +1,208 @@
+package user.registry.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import user.registry.api.AdmissionControl;
+import user.registry.cache.LruCache;
+import user.registry.subscribers.ConcurrencyLimiter;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Application level metrics: latency of workflow steps and component calls, workflow outcomes and
+ * end-to-end registration time.
+ */
+public class RegistryMetrics {
+
+  public enum Outcome {
+    SUCCESS,
+    RESERVE_FAILURE,
+    RETRY,
+    FAILOVER
+  }
+
+  private final MeterRegistry registry;
+  private final AtomicLong outstandingReservations = new AtomicLong();
+
+  public RegistryMetrics(MeterRegistry registry) {
+    this.registry = registry;
+    Gauge.builder("registry.reservations.outstanding", outstandingReservations, AtomicLong::get).register(registry);
+  }
+
+  public MeterRegistry registry() {
+    return registry;
+  }
+
+  /**
+   * Times a single execution of a workflow step call.
+   */
+  public <T> CompletionStage<T> timeStep(String step, Supplier<CompletionStage<T>> call) {
+    return time("registry.workflow.step", "step", step, call);
+  }
+
+  /**
+   * Times a call from the API to a component, e.g. timeCall("UserEntity.getState", ...).
+   */
+  public <T> CompletionStage<T> timeCall(String component, Supplier<CompletionStage<T>> call) {
+    return time("registry.component.call", "component", component, call);
+  }
+
+  public void outcome(String step, Outcome outcome) {
+    Counter.builder("registry.workflow.outcome")
+      .tag("step", step)
+      .tag("outcome", outcome.name().toLowerCase())
+      .register(registry)
+      .increment();
+  }
+
+  public void retryScheduled(String step, Duration delay) {
+    outcome(step, Outcome.RETRY);
+    Timer.builder("registry.workflow.retry.delay")
+      .tag("step", step)
+      .publishPercentileHistogram()
+      .register(registry)
+      .record(delay);
+  }
+
+  public void retryBudgetExhausted(String step) {
+    Counter.builder("registry.workflow.retry.budget-exhausted")
+      .tag("step", step)
+      .register(registry)
+      .increment();
+  }
+
+  /**
+   * Records the time from the start of a workflow until it reaches a final status.
+   */
+  public void workflowCompleted(String status, Duration elapsed) {
+    Timer.builder("registry.workflow.duration")
+      .tag("status", status.toLowerCase())
+      .publishPercentileHistogram()
+      .register(registry)
+      .record(elapsed);
+  }
+
+  /**
+   * Counts ended workflows replaced by their summary.
+   */
+  public void workflowArchived(String status) {
+    Counter.builder("registry.workflow.archived")
+      .tag("status", status.toLowerCase())
+      .register(registry)
+      .increment();
+  }
+
+  /**
+   * Counts workflow summaries appended to the export file.
+   */
+  public void workflowSummariesExported(long count) {
+    Counter.builder("registry.workflow.summaries.exported")
+      .register(registry)
+      .increment(count);
+  }
+
+  /**
+   * Counts workflow starts answered without calling the workflow, either 'coalesced' with a
+   * concurrent identical start or 'replayed' from a previous reply.
+   */
+  public void startDeduplicated(String kind) {
+    Counter.builder("registry.workflow.start.deduplicated")
+      .tag("kind", kind)
+      .register(registry)
+      .increment();
+  }
+
+  public void outstandingReservations(long count) {
+    outstandingReservations.set(count);
+  }
+
+  /**
+   * Counts reservations reclaimed because they expired, by their timer or by the sweeper.
+   */
+  public void reservationsExpired(String source, long count) {
+    Counter.builder("registry.reservations.expirations")
+      .tag("source", source)
+      .register(registry)
+      .increment(count);
+  }
+
+  /**
+   * Counts workflow starts rejected by the admission control, 'limit' is either 'global' or 'key'.
+   */
+  public void admissionRejected(String limit) {
+    Counter.builder("registry.admission.rejected")
+      .tag("limit", limit)
+      .register(registry)
+      .increment();
+  }
+
+  public void admissionDelayed(Duration wait) {
+    Timer.builder("registry.admission.wait")
+      .publishPercentileHistogram()
+      .register(registry)
+      .record(wait);
+  }
+
+  public void registerAdmission(AdmissionControl admission) {
+    Gauge.builder("registry.admission.queued", admission, AdmissionControl::queued).register(registry);
+  }
+
+  /**
+   * Time between an email change and its reconciliation with UniqueEmailEntity.
+   */
+  public void emailReconciliationLag(Duration lag) {
+    Timer.builder("registry.email-reconciliation.lag")
+      .publishPercentileHistogram()
+      .register(registry)
+      .record(lag);
+  }
+
+  /**
+   * Counts email changes reverted because the new address was in use by someone else.
+   */
+  public void emailReconciliationConflict() {
+    Counter.builder("registry.email-reconciliation.conflicts")
+      .register(registry)
+      .increment();
+  }
+
+  public void registerLimiter(String name, ConcurrencyLimiter limiter) {
+    Gauge.builder("registry.limiter.in-flight", limiter, ConcurrencyLimiter::inFlight).tag("limiter", name).register(registry);
+    Gauge.builder("registry.limiter.queued", limiter, ConcurrencyLimiter::queued).tag("limiter", name).register(registry);
+  }
+
+  /**
+   * Counts calls slowed down or failed on purpose, 'kind' is either 'latency' or 'error'.
+   */
+  public void faultInjected(String target, String kind) {
+    Counter.builder("registry.faults.injected")
+      .tag("target", target)
+      .tag("kind", kind)
+      .register(registry)
+      .increment();
+  }
+
+  public void registerCache(String name, LruCache<?, ?> cache) {
+    FunctionCounter.builder("registry.cache.hits", cache, LruCache::hits).tag("cache", name).register(registry);
+    FunctionCounter.builder("registry.cache.misses", cache, LruCache::misses).tag("cache", name).register(registry);
+    FunctionCounter.builder("registry.cache.evictions", cache, LruCache::evictions).tag("cache", name).register(registry);
+    Gauge.builder("registry.cache.size", cache, LruCache::size).tag("cache", name).register(registry);
+  }
+
+  private <T> CompletionStage<T> time(String name, String tagKey, String tagValue, Supplier<CompletionStage<T>> call) {
+    var sample = Timer.start(registry);
+    return call.get().whenComplete((__, error) ->
+      sample.stop(
+        Timer.builder(name)
+          .tag(tagKey, tagValue)
+          .tag("result", error == null ? "success" : "error")
+          .publishPercentileHistogram()
+          .register(registry)));
+  }
+}
@@ -0,0 +1,76 @@
+package user.registry.subscribers;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Runs at most maxConcurrency calls at a time, the others wait in a queue of at most maxQueued.
+ * A call that finds the queue full fails right away, which makes Kalix redeliver the event later.
+ */
+public class ConcurrencyLimiter {
+
+  private final String name;
+  private final int maxConcurrency;
+  private final int maxQueued;
+  private final Queue<Runnable> queue = new ArrayDeque<>();
+  private int inFlight;
+
+  public ConcurrencyLimiter(String name, int maxConcurrency, int maxQueued) {
+    this.name = name;
+    this.maxConcurrency = maxConcurrency;
+    this.maxQueued = maxQueued;
+  }
+
+  public <T> CompletionStage<T> submit(Supplier<CompletionStage<T>> call) {
+    var result = new CompletableFuture<T>();
+    Runnable task = () -> start(call).whenComplete((value, error) -> {
+      release();
+      if (error != null) result.completeExceptionally(error);
+      else result.complete(value);
+    });
+
+    synchronized (this) {
+      if (inFlight >= maxConcurrency) {
+        if (queue.size() >= maxQueued) {
+          return CompletableFuture.failedFuture(new RejectedExecutionException("Too many pending calls in '" + name + "'"));
+        }
+        queue.add(task);
+        return result;
+      }
+      inFlight++;
+    }
+
+    task.run();
+    return result;
+  }
+
+  public synchronized int inFlight() {
+    return inFlight;
+  }
+
+  public synchronized int queued() {
+    return queue.size();
+  }
+
+  private void release() {
+    Runnable next;
+    synchronized (this) {
+      next = queue.poll();
+      // the permit is handed over to the next task
+      if (next == null) inFlight--;
+    }
+    if (next != null) next.run();
+  }
+
+  private static <T> CompletionStage<T> start(Supplier<CompletionStage<T>> call) {
+    try {
+      return call.get();
+    } catch (RuntimeException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+}
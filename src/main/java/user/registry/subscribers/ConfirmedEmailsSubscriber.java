@@ -0,0 +1,33 @@
+package user.registry.subscribers;
+
+import kalix.javasdk.action.Action;
+import kalix.javasdk.annotations.Subscribe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import user.registry.Done;
+import user.registry.cache.ConfirmedEmails;
+import user.registry.entities.UniqueEmailEntity;
+
+/**
+ * Keeps the {@link ConfirmedEmails} cache in sync with the state of UniqueEmailEntity.
+ */
+@Subscribe.ValueEntity(UniqueEmailEntity.class)
+public class ConfirmedEmailsSubscriber extends Action {
+
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  private final ConfirmedEmails confirmedEmails;
+
+  public ConfirmedEmailsSubscriber(ConfirmedEmails confirmedEmails) {
+    this.confirmedEmails = confirmedEmails;
+  }
+
+  public Effect<Done> onChange(UniqueEmailEntity.UniqueEmail email) {
+    if (email.status() == UniqueEmailEntity.Status.CONFIRMED && email.ownerId().isPresent()) {
+      logger.debug("Caching confirmed address '{}'", email.address());
+      confirmedEmails.confirmed(email.address(), email.ownerId().get());
+    } else {
+      confirmedEmails.released(email.address());
+    }
+    return effects().reply(Done.done());
+  }
+}
@@ -0,0 +1,47 @@
+package user.registry.subscribers;
+
+import kalix.javasdk.action.Action;
+import kalix.javasdk.annotations.Subscribe;
+import kalix.javasdk.client.ComponentClient;
+import user.registry.Done;
+import user.registry.Settings;
+import user.registry.entities.CountryCounterEntity;
+import user.registry.entities.UserEntity;
+
+/**
+ * Maintains the per-country user counters from the user events. Each update carries the id of its
+ * event, so that CountryCounterEntity can ignore redeliveries.
+ */
+@Subscribe.EventSourcedEntity(value = UserEntity.class, ignoreUnknown = true)
+public class CountryCountersSubscriber extends Action {
+
+  private final ComponentClient client;
+  private final int shards;
+
+  public CountryCountersSubscriber(ComponentClient client, Settings settings) {
+    this.client = client;
+    this.shards = settings.counters().shards();
+  }
+
+  public Effect<Done> onEvent(UserEntity.UserWasCreated evt) {
+    return update(evt.country(), 1);
+  }
+
+  public Effect<Done> onEvent(UserEntity.UserWasRemoved evt) {
+    return update(evt.country(), -1);
+  }
+
+  private Effect<Done> update(String country, int delta) {
+    var userId = actionContext().eventSubject().orElseThrow();
+    var shard = Math.floorMod(userId.hashCode(), shards);
+    var metadata = actionContext().metadata();
+    // the CloudEvent id is unique per event of the user, and kept when the event is redelivered
+    var eventId = metadata.isCloudEvent() ? metadata.asCloudEvent().id() : null;
+    var update = new CountryCounterEntity.Update(country, shard, userId, delta, eventId);
+
+    return effects().forward(
+      client.forValueEntity(CountryCounterEntity.Update.counterId(country, shard))
+        .call(CountryCounterEntity::update)
+        .params(update));
+  }
+}
@@ -0,0 +1,168 @@
+package user.registry.subscribers;
+
+import kalix.javasdk.DeferredCallResponseException;
+import kalix.javasdk.StatusCode;
+import kalix.javasdk.action.Action;
+import kalix.javasdk.annotations.Subscribe;
+import kalix.javasdk.client.ComponentClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import user.registry.Done;
+import user.registry.entities.UniqueEmailEntity;
+import user.registry.entities.UserEntity;
+import user.registry.metrics.RegistryMetrics;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Keeps UniqueEmailEntity in line with email changes of existing users, so that changing an email
+ * stays a single write on UserEntity.
+ * <p>
+ * The new address is assigned to the user and the old one is released afterwards. If the new address
+ * is already in use by someone else, whoever got it first keeps it and the user is changed back to
+ * the previous address. The old address is then not released, as it's the current email again.
+ * <p>
+ * Emails assigned on creation are reserved by the creation workflow and are skipped here.
+ */
+@Subscribe.EventSourcedEntity(value = UserEntity.class, ignoreUnknown = true)
+public class EmailReconciliation extends Action {
+
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  private final ComponentClient client;
+  private final RegistryMetrics metrics;
+  private final ConcurrencyLimiter limiter;
+
+  public EmailReconciliation(ComponentClient client, RegistryMetrics metrics, ConcurrencyLimiter limiter) {
+    this.client = client;
+    this.metrics = metrics;
+    this.limiter = limiter;
+  }
+
+  public Effect<Done> onEvent(UserEntity.EmailAssigned evt) {
+    if (evt.previousEmail().isEmpty()) {
+      return effects().reply(Done.done());
+    }
+    recordLag();
+
+    var userId = actionContext().eventSubject().orElseThrow();
+    var previousEmail = evt.previousEmail().get();
+
+    var res =
+      limiter.submit(() ->
+          client.forValueEntity(evt.newEmail())
+            .call(UniqueEmailEntity::assign)
+            .params(new UniqueEmailEntity.ReserveEmail(evt.newEmail(), userId))
+            .execute())
+        .handle((done, error) -> {
+          if (error == null) {
+            return CompletableFuture.completedFuture(Done.done());
+          }
+          return onAssignFailure(userId, evt.newEmail(), previousEmail, error);
+        })
+        .thenCompose(done -> done);
+
+    return effects().asyncReply(res);
+  }
+
+  public Effect<Done> onEvent(UserEntity.EmailUnassigned evt) {
+    recordLag();
+    var userId = actionContext().eventSubject().orElseThrow();
+
+    var res =
+      currentEmail(userId)
+        .thenCompose(currentEmail -> {
+          if (!shouldRelease(evt.oldEmail(), currentEmail)) {
+            logger.info("Address '{}' is the email of user '{}' again, not releasing it", evt.oldEmail(), userId);
+            return CompletableFuture.completedFuture(Done.done());
+          }
+          return limiter.submit(() ->
+            client.forValueEntity(evt.oldEmail())
+              .call(UniqueEmailEntity::release)
+              .params(new UniqueEmailEntity.ReleaseEmail(userId))
+              .execute());
+        });
+
+    return effects().asyncReply(res);
+  }
+
+  /**
+   * Reverts the change if the address is owned by someone else, any other failure is left to the
+   * redelivery of the event.
+   */
+  private CompletionStage<Done> onAssignFailure(String userId, String newEmail, String previousEmail, Throwable error) {
+    return limiter.submit(() ->
+        client.forValueEntity(newEmail)
+          .call(UniqueEmailEntity::getState)
+          .execute())
+      .thenCompose(email -> {
+        if (!isOwnedBySomeoneElse(email, userId)) {
+          return CompletableFuture.failedFuture(error);
+        }
+
+        metrics.emailReconciliationConflict();
+        return currentEmail(userId).thenCompose(currentEmail -> {
+          if (!shouldRevert(newEmail, currentEmail)) {
+            return CompletableFuture.completedFuture(Done.done());
+          }
+          logger.warn("Address '{}' is already in use, changing user '{}' back to '{}'", newEmail, userId, previousEmail);
+          return limiter.submit(() ->
+            client.forEventSourcedEntity(userId)
+              .call(UserEntity::changeEmail)
+              .params(new UserEntity.ChangeEmail(previousEmail))
+              .execute());
+        });
+      });
+  }
+
+  /**
+   * Only a conflict with another owner is resolved here, the other failures to assign the address are
+   * transient.
+   */
+  static boolean isOwnedBySomeoneElse(UniqueEmailEntity.UniqueEmail email, String userId) {
+    return email.isInUse() && email.notSameOwner(userId);
+  }
+
+  /**
+   * The user is changed back only if the conflicting address is still its email. A later change
+   * already replaced it otherwise, and is reconciled on its own.
+   */
+  static boolean shouldRevert(String newEmail, String currentEmail) {
+    return newEmail.equals(currentEmail);
+  }
+
+  /**
+   * The old address is kept when it's the email of the user again, i.e. the change was reverted.
+   */
+  static boolean shouldRelease(String oldEmail, String currentEmail) {
+    return !oldEmail.equals(currentEmail);
+  }
+
+  /**
+   * The current email of the user, or null if it doesn't exist anymore.
+   */
+  private CompletionStage<String> currentEmail(String userId) {
+    return limiter.submit(() ->
+        client.forEventSourcedEntity(userId)
+          .call(UserEntity::getState)
+          .execute())
+      .handle((user, error) -> {
+        if (error == null) return user.email();
+        var cause = error instanceof CompletionException ? error.getCause() : error;
+        if (cause instanceof DeferredCallResponseException response
+          && response.errorCode() == StatusCode.ErrorCode.NOT_FOUND) return null;
+        throw new CompletionException(error);
+      });
+  }
+
+  private void recordLag() {
+    var metadata = actionContext().metadata();
+    if (metadata.isCloudEvent()) {
+      metadata.asCloudEvent().time().ifPresent(time ->
+        metrics.emailReconciliationLag(Duration.between(time.toInstant(), Instant.now())));
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package user.registry.subscribers;
+
+import kalix.javasdk.action.Action;
+import kalix.javasdk.annotations.Acl;
+import kalix.javasdk.annotations.Subscribe;
+import kalix.javasdk.client.ComponentClient;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import user.registry.Done;
+import user.registry.Settings;
+import user.registry.entities.UniqueEmailEntity;
+import user.registry.metrics.RegistryMetrics;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Starts a timer for every new reservation, expiring it back to NOT_USED if it isn't confirmed within
+ * 'user-registry.reservations.ttl'. The timer is cancelled when the address leaves RESERVED before
+ * the end of the ttl, later changes don't touch the timers. A timer that fires anyway expires nothing,
+ * the expire command only applies to the reservation it was started for.
+ */
+@Acl(allow = @Acl.Matcher(service = "*"))
+public class ReservationExpiry extends Action {
+
+  private final ComponentClient client;
+  private final RegistryMetrics metrics;
+  private final Duration ttl;
+
+  public ReservationExpiry(ComponentClient client, RegistryMetrics metrics, Settings settings) {
+    this.client = client;
+    this.metrics = metrics;
+    this.ttl = settings.reservations().ttl();
+  }
+
+  @Subscribe.ValueEntity(UniqueEmailEntity.class)
+  public Effect<Done> onChange(UniqueEmailEntity.UniqueEmail email) {
+    var timerName = timerName(email.address());
+
+    if (email.isReserved() && email.reservedAt().isPresent()) {
+      var reservedAt = email.reservedAt().get();
+      var delay = Duration.between(Instant.now(), reservedAt.plus(ttl));
+      var expire =
+        client.forAction()
+          .call(ReservationExpiry::expire)
+          .params(email.address(), new UniqueEmailEntity.ExpireReservation(reservedAt.toEpochMilli()));
+
+      var scheduled = timers().startSingleTimer(timerName, delay.isNegative() ? Duration.ZERO : delay, expire);
+      return effects().asyncReply(scheduled.thenApply(__ -> Done.done()));
+    } else if (email.reservedAt().filter(reservedAt -> reservedAt.plus(ttl).isAfter(Instant.now())).isPresent()) {
+      // confirmed or taken over while its timer may still be pending
+      return effects().asyncReply(timers().cancel(timerName).thenApply(__ -> Done.done()));
+    } else {
+      return effects().reply(Done.done());
+    }
+  }
+
+  @PostMapping("/reservations/{address}/expire")
+  public Effect<Done> expire(@PathVariable String address, @RequestBody UniqueEmailEntity.ExpireReservation cmd) {
+    var expired =
+      client.forValueEntity(address)
+        .call(UniqueEmailEntity::expire)
+        .params(cmd)
+        .execute()
+        .thenApply(expiration -> {
+          if (expiration.reclaimed()) metrics.reservationsExpired("timer", 1);
+          return Done.done();
+        });
+    return effects().asyncReply(expired);
+  }
+
+  private static String timerName(String address) {
+    return "reservation-expiry-" + address;
+  }
+}
@@ -0,0 +1,89 @@
+package user.registry.subscribers;
+
+import kalix.javasdk.action.Action;
+import kalix.javasdk.annotations.Acl;
+import kalix.javasdk.client.ComponentClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.PostMapping;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import user.registry.Done;
+import user.registry.Settings;
+import user.registry.entities.UniqueEmailEntity;
+import user.registry.metrics.RegistryMetrics;
+import user.registry.views.UniqueEmailsView;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Backstop for {@link ReservationExpiry}: periodically reclaims expired reservations whose timer was
+ * lost, e.g. reservations made before timers were introduced. Each run expires at most
+ * 'sweep-batch-size' reservations at 'sweep-rate-per-second' and schedules the next run.
+ * <p>
+ * The first POST to /admin/reservations/sweep starts the cycle, calling it again is harmless.
+ */
+@Acl(allow = @Acl.Matcher(service = "*"))
+public class ReservationSweeper extends Action {
+
+  private static final String TIMER_NAME = "reservation-sweeper";
+
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  private final ComponentClient client;
+  private final RegistryMetrics metrics;
+  private final Settings.Reservations settings;
+
+  public ReservationSweeper(ComponentClient client, RegistryMetrics metrics, Settings settings) {
+    this.client = client;
+    this.metrics = metrics;
+    this.settings = settings.reservations();
+  }
+
+  @PostMapping("/admin/reservations/sweep")
+  public Effect<Done> sweep() {
+    var reservedBefore = Instant.now().minus(settings.ttl()).toEpochMilli();
+    var ratePause = Duration.ofMillis(1000L / Math.max(1, settings.sweepRatePerSecond()));
+
+    var swept =
+      client.forView()
+        .call(UniqueEmailsView::getExpiredReservations)
+        .params(reservedBefore, settings.sweepBatchSize())
+        .execute()
+        .thenCompose(page ->
+          Flux.fromIterable(page.emails())
+            .delayElements(ratePause)
+            .concatMap(email ->
+              Mono.fromCompletionStage(() ->
+                  client.forValueEntity(email.address())
+                    .call(UniqueEmailEntity::expire)
+                    .params(new UniqueEmailEntity.ExpireReservation(email.reservedAt()))
+                    .execute())
+                .filter(UniqueEmailEntity.Expiration::reclaimed)
+                .onErrorResume(error -> {
+                  logger.warn("Failed to expire reservation of '{}': {}", email.address(), error.getMessage());
+                  return Mono.empty();
+                }))
+            .count()
+            .toFuture()
+            .thenApply(expired -> {
+              logger.info("Reclaimed {} expired reservations", expired);
+              metrics.reservationsExpired("sweeper", expired);
+              // more to reclaim, don't wait a whole interval
+              return page.hasMore() ? ratePause : settings.sweepInterval();
+            }))
+        .thenCompose(nextRun ->
+          client.forView()
+            .call(UniqueEmailsView::countReservations)
+            .execute()
+            .thenApply(count -> {
+              metrics.outstandingReservations(count.count());
+              return nextRun;
+            }))
+        .thenCompose(nextRun ->
+          timers().startSingleTimer(TIMER_NAME, nextRun, client.forAction().call(ReservationSweeper::sweep)))
+        .thenApply(__ -> Done.done());
+
+    return effects().asyncReply(swept);
+  }
+}
@@ -0,0 +1,41 @@
+package user.registry.subscribers;
+
+import kalix.javasdk.action.Action;
+import kalix.javasdk.annotations.Subscribe;
+import user.registry.Done;
+import user.registry.cache.UserInfoCache;
+import user.registry.entities.UserEntity;
+
+/**
+ * Drops a user from the {@link UserInfoCache} whenever one of its events changes the profile.
+ */
+@Subscribe.EventSourcedEntity(value = UserEntity.class, ignoreUnknown = true)
+public class UserInfoCacheInvalidator extends Action {
+
+  private final UserInfoCache userInfoCache;
+
+  public UserInfoCacheInvalidator(UserInfoCache userInfoCache) {
+    this.userInfoCache = userInfoCache;
+  }
+
+  public Effect<Done> onEvent(UserEntity.UserWasCreated evt) {
+    return invalidate();
+  }
+
+  public Effect<Done> onEvent(UserEntity.EmailAssigned evt) {
+    return invalidate();
+  }
+
+  public Effect<Done> onEvent(UserEntity.EmailUnassigned evt) {
+    return invalidate();
+  }
+
+  public Effect<Done> onEvent(UserEntity.UserWasRemoved evt) {
+    return invalidate();
+  }
+
+  private Effect<Done> invalidate() {
+    actionContext().eventSubject().ifPresent(userInfoCache::invalidate);
+    return effects().reply(Done.done());
+  }
+}
@@ -0,0 +1,64 @@
+package user.registry.subscribers;
+
+import kalix.javasdk.action.Action;
+import kalix.javasdk.annotations.Acl;
+import kalix.javasdk.annotations.Subscribe;
+import kalix.javasdk.client.ComponentClient;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import user.registry.Done;
+import user.registry.Settings;
+import user.registry.api.workflows.UserCreationWorkflow;
+import user.registry.entities.CreationStatusEntity;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Starts a timer for every workflow that ended as FINISHED or FAILED, archiving it to a summary once
+ * 'user-registry.retention.grace-period' is over. PAUSED workflows can be resumed and are kept.
+ */
+@Acl(allow = @Acl.Matcher(service = "*"))
+public class WorkflowRetention extends Action {
+
+  private final ComponentClient client;
+  private final Settings.Retention settings;
+
+  public WorkflowRetention(ComponentClient client, Settings settings) {
+    this.client = client;
+    this.settings = settings.retention();
+  }
+
+  @Subscribe.ValueEntity(CreationStatusEntity.class)
+  public Effect<Done> onChange(CreationStatusEntity.CreationStatus status) {
+    if (!settings.enabled() || !isEnded(status.status())) {
+      return effects().reply(Done.done());
+    }
+
+    var endedAt = Instant.ofEpochMilli(status.updatedAt());
+    var delay = Duration.between(Instant.now(), endedAt.plus(settings.gracePeriod()));
+    var archive = client.forAction().call(WorkflowRetention::archive).params(status.userId());
+
+    var scheduled = timers().startSingleTimer(timerName(status.userId()), delay.isNegative() ? Duration.ZERO : delay, archive);
+    return effects().asyncReply(scheduled.thenApply(__ -> Done.done()));
+  }
+
+  @PostMapping("/admin/workflows/{userId}/archive")
+  public Effect<Done> archive(@PathVariable String userId) {
+    var archived =
+      client.forWorkflow(userId)
+        .call(UserCreationWorkflow::archive)
+        .execute()
+        .thenApply(__ -> Done.done());
+    return effects().asyncReply(archived);
+  }
+
+  private static boolean isEnded(String status) {
+    return status.equals(UserCreationWorkflow.Status.FINISHED.name())
+      || status.equals(UserCreationWorkflow.Status.FAILED.name());
+  }
+
+  private static String timerName(String userId) {
+    return "workflow-retention-" + userId;
+  }
+}
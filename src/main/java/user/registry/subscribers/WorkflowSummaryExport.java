@@ -0,0 +1,111 @@
+package user.registry.subscribers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import kalix.javasdk.action.Action;
+import kalix.javasdk.annotations.Acl;
+import kalix.javasdk.client.ComponentClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import user.registry.Done;
+import user.registry.Settings;
+import user.registry.api.workflows.UserCreationWorkflow;
+import user.registry.entities.CreationStatusEntity;
+import user.registry.metrics.RegistryMetrics;
+import user.registry.views.CreationStatusView;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Appends the summaries of the workflows archived by {@link WorkflowRetention} to
+ * 'user-registry.retention.export.file', one JSON object per line. Each run exports the workflows
+ * that ended between the end of the previous run and the start of the grace period, then schedules
+ * the next run.
+ * <p>
+ * POST /admin/workflows/export?since=0 starts the cycle from the first workflow. A run that fails is
+ * retried by its timer from the same point, so a summary may be written more than once.
+ */
+@Acl(allow = @Acl.Matcher(service = "*"))
+public class WorkflowSummaryExport extends Action {
+
+  private static final String TIMER_NAME = "workflow-summary-export";
+  private static final List<UserCreationWorkflow.Status> ENDED =
+    List.of(UserCreationWorkflow.Status.FINISHED, UserCreationWorkflow.Status.FAILED);
+
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final ComponentClient client;
+  private final RegistryMetrics metrics;
+  private final Settings.Retention settings;
+
+  public WorkflowSummaryExport(ComponentClient client, RegistryMetrics metrics, Settings settings) {
+    this.client = client;
+    this.metrics = metrics;
+    this.settings = settings.retention();
+  }
+
+  /**
+   * @param since epoch millis from which the ended workflows are exported
+   */
+  @PostMapping("/admin/workflows/export")
+  public Effect<Done> export(@RequestParam long since) {
+    var until = Math.max(since, Instant.now().minus(settings.gracePeriod()).toEpochMilli());
+
+    var exported =
+      Flux.fromIterable(ENDED)
+        .concatMap(status -> statuses(status.name(), since, until))
+        .buffer(settings.exportBatchSize())
+        .concatMap(batch -> Mono.fromCallable(() -> append(batch)))
+        .reduce(0L, Long::sum)
+        .toFuture()
+        .thenCompose(count -> {
+          logger.info("Exported {} workflow summaries up to {}", count, Instant.ofEpochMilli(until));
+          metrics.workflowSummariesExported(count);
+          return timers().startSingleTimer(
+            TIMER_NAME,
+            settings.exportInterval(),
+            client.forAction().call(WorkflowSummaryExport::export).params(until));
+        })
+        .thenApply(__ -> Done.done());
+
+    return effects().asyncReply(exported);
+  }
+
+  private Flux<CreationStatusEntity.CreationStatus> statuses(String status, long since, long until) {
+    return Mono.fromCompletionStage(() -> page(status, since, until, ""))
+      .expand(page -> page.hasMore()
+        ? Mono.fromCompletionStage(() -> page(status, since, until, page.nextPageToken()))
+        : Mono.empty())
+      .concatMapIterable(CreationStatusView.StatusPage::statuses);
+  }
+
+  private CompletionStage<CreationStatusView.StatusPage> page(String status, long since, long until, String pageToken) {
+    return client.forView()
+      .call(CreationStatusView::getByStatusBetween)
+      .params(status, since, until, pageToken, settings.exportBatchSize())
+      .execute();
+  }
+
+  private long append(List<CreationStatusEntity.CreationStatus> summaries) throws IOException {
+    var lines = new ArrayList<String>(summaries.size());
+    for (var summary : summaries) {
+      lines.add(mapper.writeValueAsString(summary));
+    }
+
+    var file = Path.of(settings.exportFile());
+    if (file.getParent() != null) Files.createDirectories(file.getParent());
+    Files.write(file, lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    return lines.size();
+  }
+}
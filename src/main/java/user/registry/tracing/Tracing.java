@@ -0,0 +1,154 @@
+package user.registry.tracing;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.propagation.TextMapGetter;
+import io.opentelemetry.exporter.otlp.trace.OtlpGrpcSpanExporter;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import kalix.javasdk.Metadata;
+import user.registry.Settings;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Spans of the registrations, exported over OTLP or to a file as configured in the 'tracing' section
+ * of application.conf.
+ * <p>
+ * The context travels between components as a W3C 'traceparent' metadata entry, and is kept in the
+ * workflow state so that all the steps of a workflow end up in the trace of its start. When tracing
+ * is disabled the spans are no-ops and no metadata is added.
+ */
+public class Tracing {
+
+  public static final String TRACEPARENT = "traceparent";
+
+  public static final AttributeKey<String> WORKFLOW_ID = AttributeKey.stringKey("workflow.id");
+  public static final AttributeKey<String> STEP = AttributeKey.stringKey("workflow.step");
+  public static final AttributeKey<Long> ATTEMPT = AttributeKey.longKey("workflow.attempt");
+
+  private static final TextMapGetter<Map<String, String>> GETTER = new TextMapGetter<>() {
+    @Override
+    public Iterable<String> keys(Map<String, String> carrier) {
+      return carrier.keySet();
+    }
+
+    @Override
+    public String get(Map<String, String> carrier, String key) {
+      return carrier == null ? null : carrier.get(key);
+    }
+  };
+
+  private final OpenTelemetry openTelemetry;
+  private final Tracer tracer;
+
+  public Tracing(Settings settings) {
+    this(create(settings.tracing()));
+  }
+
+  Tracing(OpenTelemetry openTelemetry) {
+    this.openTelemetry = openTelemetry;
+    this.tracer = openTelemetry.getTracer("user-registry");
+  }
+
+  private static OpenTelemetry create(Settings.Tracing settings) {
+    if (!settings.enabled()) {
+      return OpenTelemetry.noop();
+    }
+
+    SpanExporter exporter;
+    if (settings.exporter().equals("file")) {
+      try {
+        exporter = new FileSpanExporter(Path.of(settings.file()));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    } else {
+      exporter = OtlpGrpcSpanExporter.builder().setEndpoint(settings.otlpEndpoint()).build();
+    }
+
+    var tracerProvider =
+      SdkTracerProvider.builder()
+        .setResource(Resource.getDefault().merge(Resource.create(
+          Attributes.of(AttributeKey.stringKey("service.name"), settings.serviceName()))))
+        .setSampler(Sampler.parentBased(Sampler.traceIdRatioBased(settings.sampleRatio())))
+        .addSpanProcessor(BatchSpanProcessor.builder(exporter).build())
+        .build();
+
+    return OpenTelemetrySdk.builder().setTracerProvider(tracerProvider).build();
+  }
+
+  /**
+   * Starts a span in the trace of the given 'traceparent', or a new trace if there is none.
+   */
+  public Span start(String name, Optional<String> traceparent, SpanKind kind, Attributes attributes) {
+    var parent = traceparent
+      .map(value -> W3CTraceContextPropagator.getInstance().extract(Context.root(), Map.of(TRACEPARENT, value), GETTER))
+      .orElse(Context.root());
+
+    return tracer.spanBuilder(name)
+      .setParent(parent)
+      .setSpanKind(kind)
+      .setAllAttributes(attributes)
+      .startSpan();
+  }
+
+  public Span startChild(Span parent, String name, Attributes attributes) {
+    return tracer.spanBuilder(name)
+      .setParent(Context.root().with(parent))
+      .setAllAttributes(attributes)
+      .startSpan();
+  }
+
+  /**
+   * Ends the span once the call completes, with an error status if it failed.
+   */
+  public <T> CompletionStage<T> endWhenDone(Span span, CompletionStage<T> call) {
+    return call.whenComplete((__, error) -> {
+      if (error != null) span.setStatus(StatusCode.ERROR, String.valueOf(error.getMessage()));
+      span.end();
+    });
+  }
+
+  /**
+   * The W3C 'traceparent' of the span, empty if it isn't recorded.
+   */
+  public Optional<String> traceparent(Span span) {
+    if (!span.getSpanContext().isValid()) return Optional.empty();
+    var carrier = new HashMap<String, String>();
+    W3CTraceContextPropagator.getInstance().inject(Context.root().with(span), carrier, Map::put);
+    return Optional.ofNullable(carrier.get(TRACEPARENT));
+  }
+
+  /**
+   * Metadata for a component call made within the span.
+   */
+  public Metadata metadata(Span span) {
+    return traceparent(span)
+      .map(value -> Metadata.EMPTY.add(TRACEPARENT, value))
+      .orElse(Metadata.EMPTY);
+  }
+
+  public void shutdown() {
+    if (openTelemetry instanceof OpenTelemetrySdk sdk) {
+      sdk.getSdkTracerProvider().shutdown();
+    }
+  }
+}
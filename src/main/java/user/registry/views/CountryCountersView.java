@@ -0,0 +1,36 @@
+package user.registry.views;
+
+import kalix.javasdk.annotations.Query;
+import kalix.javasdk.annotations.Subscribe;
+import kalix.javasdk.annotations.Table;
+import kalix.javasdk.annotations.ViewId;
+import kalix.javasdk.view.View;
+import org.springframework.web.bind.annotation.GetMapping;
+import user.registry.entities.CountryCounterEntity;
+
+import java.util.List;
+
+/**
+ * All shards of the per-country user counters, one row per shard.
+ */
+@ViewId("view-country-counters")
+@Table("country_counters")
+public class CountryCountersView extends View<CountryCountersView.CounterRow> {
+
+  public record CounterRow(String country, int shard, long count) {
+  }
+
+  public record CounterRows(List<CounterRow> counters) {
+  }
+
+  @GetMapping("/country-counters")
+  @Query("SELECT * AS counters FROM country_counters")
+  public CounterRows getAllCounters() {
+    return null;
+  }
+
+  @Subscribe.ValueEntity(CountryCounterEntity.class)
+  public UpdateEffect<CounterRow> onChange(CountryCounterEntity.CountryCounter counter) {
+    return effects().updateState(new CounterRow(counter.country(), counter.shard(), counter.count()));
+  }
+}
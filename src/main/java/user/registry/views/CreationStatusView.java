@@ -0,0 +1,79 @@
+package user.registry.views;
+
+import kalix.javasdk.annotations.Query;
+import kalix.javasdk.annotations.Subscribe;
+import kalix.javasdk.annotations.Table;
+import kalix.javasdk.annotations.ViewId;
+import kalix.javasdk.view.View;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import user.registry.entities.CreationStatusEntity;
+
+import java.util.List;
+
+/**
+ * Creation workflows by status, e.g. to find all workflows PAUSED since a given time and resume them.
+ */
+@ViewId("view-creation-statuses")
+@Table("creation_statuses")
+@Subscribe.ValueEntity(CreationStatusEntity.class)
+public class CreationStatusView extends View<CreationStatusEntity.CreationStatus> {
+
+  public record StatusPage(List<CreationStatusEntity.CreationStatus> statuses, String nextPageToken, boolean hasMore) {
+  }
+
+  public record StatusCount(long count) {
+  }
+
+  /**
+   * Workflows in the given status since the given epoch millis, oldest first. Start with an empty page
+   * token and pass the returned nextPageToken to get the next page.
+   */
+  @GetMapping("/creation-statuses/by-status/{status}")
+  @Query("""
+    SELECT * AS statuses, next_page_token() AS nextPageToken, has_more() AS hasMore
+    FROM creation_statuses
+    WHERE status = :status AND updatedAt >= :since
+    ORDER BY updatedAt
+    OFFSET page_token_offset(:pageToken)
+    LIMIT :pageSize
+    """)
+  public StatusPage getByStatus(@PathVariable String status,
+                                @RequestParam long since,
+                                @RequestParam String pageToken,
+                                @RequestParam int pageSize) {
+    return null;
+  }
+
+  /**
+   * Workflows that reached the given status between since (inclusive) and until (exclusive), oldest
+   * first, paginated like getByStatus.
+   */
+  @GetMapping("/creation-statuses/by-status/{status}/between")
+  @Query("""
+    SELECT * AS statuses, next_page_token() AS nextPageToken, has_more() AS hasMore
+    FROM creation_statuses
+    WHERE status = :status AND updatedAt >= :since AND updatedAt < :until
+    ORDER BY updatedAt
+    OFFSET page_token_offset(:pageToken)
+    LIMIT :pageSize
+    """)
+  public StatusPage getByStatusBetween(@PathVariable String status,
+                                       @RequestParam long since,
+                                       @RequestParam long until,
+                                       @RequestParam String pageToken,
+                                       @RequestParam int pageSize) {
+    return null;
+  }
+
+  /**
+   * Number of workflows in the given status with the given error message, e.g. FAILED workflows with
+   * 'failed to create user'.
+   */
+  @GetMapping("/creation-statuses/by-status/{status}/count")
+  @Query("SELECT total_count() AS count FROM creation_statuses WHERE status = :status AND errorMessage = :errorMessage")
+  public StatusCount countByError(@PathVariable String status, @RequestParam String errorMessage) {
+    return null;
+  }
+}
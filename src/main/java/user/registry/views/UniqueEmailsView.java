@@ -0,0 +1,84 @@
+package user.registry.views;
+
+import kalix.javasdk.annotations.Query;
+import kalix.javasdk.annotations.Subscribe;
+import kalix.javasdk.annotations.Table;
+import kalix.javasdk.annotations.ViewId;
+import kalix.javasdk.view.View;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import reactor.core.publisher.Flux;
+import user.registry.entities.UniqueEmailEntity;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Email reservations indexed by status and owner, to inspect them without calling UniqueEmailEntity
+ * once per address.
+ */
+@ViewId("view-unique-emails")
+@Table("unique_emails")
+@Subscribe.ValueEntity(UniqueEmailEntity.class)
+public class UniqueEmailsView extends View<UniqueEmailsView.EmailView> {
+
+  /**
+   * @param ownerId    empty when the address is not used
+   * @param reservedAt epoch millis of the reservation, 0 when the address is not used
+   */
+  public record EmailView(String address, String status, String ownerId, long reservedAt) {
+  }
+
+  public record EmailsPage(List<EmailView> emails, boolean hasMore) {
+  }
+
+  public record EmailsCount(long count) {
+  }
+
+  /**
+   * Addresses in the given status reserved before the given epoch millis, e.g. stale reservations
+   * with /emails/by-status/RESERVED?reservedBefore=1685613600000
+   */
+  @GetMapping("/emails/by-status/{status}")
+  @Query("SELECT * FROM unique_emails WHERE status = :status AND reservedAt < :reservedBefore")
+  public Flux<EmailView> getEmailsByStatus(@PathVariable String status, @RequestParam long reservedBefore) {
+    return null;
+  }
+
+  /**
+   * At most 'limit' reservations made before the given epoch millis, oldest first.
+   */
+  @GetMapping("/emails/expired-reservations")
+  @Query("""
+    SELECT * AS emails, has_more() AS hasMore
+    FROM unique_emails
+    WHERE status = 'RESERVED' AND reservedAt < :reservedBefore
+    ORDER BY reservedAt
+    LIMIT :limit
+    """)
+  public EmailsPage getExpiredReservations(@RequestParam long reservedBefore, @RequestParam int limit) {
+    return null;
+  }
+
+  @GetMapping("/emails/reservations/count")
+  @Query("SELECT total_count() AS count FROM unique_emails WHERE status = 'RESERVED'")
+  public EmailsCount countReservations() {
+    return null;
+  }
+
+  @GetMapping("/emails/by-owner/{ownerId}")
+  @Query("SELECT * FROM unique_emails WHERE ownerId = :ownerId")
+  public Flux<EmailView> getEmailsByOwner(@PathVariable String ownerId) {
+    return null;
+  }
+
+  public UpdateEffect<EmailView> onChange(UniqueEmailEntity.UniqueEmail email) {
+    return effects().updateState(
+      new EmailView(
+        email.address(),
+        email.status().name(),
+        email.ownerId().orElse(""),
+        email.reservedAt().map(Instant::toEpochMilli).orElse(0L)));
+  }
+}
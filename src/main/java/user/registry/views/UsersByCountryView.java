@@ -9,9 +9,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 import reactor.core.publisher.Flux;
 import user.registry.entities.UserEntity;
 
+import java.util.List;
+
 @ViewId("view-users-by-newCountry")
 @Table("users_by_country")
 @Subscribe.EventSourcedEntity(value = UserEntity.class, ignoreUnknown = true)
@@ -25,12 +28,68 @@ public class UsersByCountryView extends View<UsersByCountryView.UserView> {
     }
   }
 
+  public record UsersPage(List<UserView> users, String nextPageToken, boolean hasMore) {
+  }
+
+  public record UsersCount(long count) {
+  }
+
   @GetMapping("/users/by-country/{country}")
   @Query("SELECT * FROM users_by_country WHERE country = :country")
   public Flux<UserView> getUserByCountry(@PathVariable String country) {
     return null;
   }
 
+  /**
+   * One page of the users of a country, start with an empty page token and pass the returned
+   * nextPageToken to get the next page.
+   */
+  @GetMapping("/users/by-country/{country}/page")
+  @Query("""
+    SELECT * AS users, next_page_token() AS nextPageToken, has_more() AS hasMore
+    FROM users_by_country
+    WHERE country = :country
+    OFFSET page_token_offset(:pageToken)
+    LIMIT :pageSize
+    """)
+  public UsersPage getUsersPage(@PathVariable String country,
+                                @RequestParam String pageToken,
+                                @RequestParam int pageSize) {
+    return null;
+  }
+
+  /**
+   * Same as getUsersPage, restricted to names in [nameFrom, nameTo). A name prefix is the range from
+   * the prefix to the prefix followed by Character.MAX_VALUE.
+   */
+  @GetMapping("/users/by-country/{country}/by-name")
+  @Query("""
+    SELECT * AS users, next_page_token() AS nextPageToken, has_more() AS hasMore
+    FROM users_by_country
+    WHERE country = :country AND name >= :nameFrom AND name < :nameTo
+    OFFSET page_token_offset(:pageToken)
+    LIMIT :pageSize
+    """)
+  public UsersPage getUsersPageByName(@PathVariable String country,
+                                      @RequestParam String nameFrom,
+                                      @RequestParam String nameTo,
+                                      @RequestParam String pageToken,
+                                      @RequestParam int pageSize) {
+    return null;
+  }
+
+  @GetMapping("/users/by-country/{country}/count")
+  @Query("SELECT total_count() AS count FROM users_by_country WHERE country = :country")
+  public UsersCount countUsers(@PathVariable String country) {
+    return null;
+  }
+
+  @GetMapping("/users/by-email/{email}")
+  @Query("SELECT * FROM users_by_country WHERE email = :email")
+  public Flux<UserView> getUserByEmail(@PathVariable String email) {
+    return null;
+  }
+
   public UpdateEffect<UserView> onEvent(UserEntity.UserWasCreated evt) {
     logger.info("User was created: {}", evt);
     var currentId = updateContext().eventSubject().orElseThrow();
@@ -42,4 +101,9 @@ public class UsersByCountryView extends View<UsersByCountryView.UserView> {
     var updatedView = viewState().withEmail(evt.newEmail());
     return effects().updateState(updatedView);
   }
+
+  public UpdateEffect<UserView> onEvent(UserEntity.UserWasRemoved evt) {
+    logger.info("User was removed: {}", evt);
+    return effects().deleteState();
+  }
 }
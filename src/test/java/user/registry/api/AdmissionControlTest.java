@@ -0,0 +1,95 @@
+package user.registry.api;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import user.registry.Settings;
+import user.registry.metrics.RegistryMetrics;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdmissionControlTest {
+
+  private final Clock clock = Clock.fixed(Instant.parse("2023-06-01T10:00:00Z"), ZoneOffset.UTC);
+
+  private AdmissionControl admissionControl(Settings.Limit global, Settings.Limit perKey, Duration maxWait, int maxQueued) {
+    var settings = new Settings.Admission(true, global, perKey, true, 100, maxWait, maxQueued);
+    return new AdmissionControl(settings, new RegistryMetrics(new SimpleMeterRegistry()), clock);
+  }
+
+  @Test
+  public void admitBurstRightAway() {
+    var admission = admissionControl(new Settings.Limit(10, 3), new Settings.Limit(10, 3), Duration.ofSeconds(1), 10);
+
+    for (int i = 0; i < 3; i++) {
+      assertTrue(admission.admit("country:Belgium").toCompletableFuture().isDone());
+    }
+    // the fourth one waits for a token
+    var delayed = admission.admit("country:Belgium").toCompletableFuture();
+    assertFalse(delayed.isDone());
+    assertEquals(1, admission.queued());
+
+    delayed.join();
+    assertEquals(0, admission.queued());
+  }
+
+  @Test
+  public void rejectWhenTheWaitIsTooLong() {
+    var admission = admissionControl(new Settings.Limit(100, 100), new Settings.Limit(1, 1), Duration.ofMillis(500), 10);
+
+    admission.admit("country:Belgium").toCompletableFuture().join();
+    var rejected = admission.admit("country:Belgium").toCompletableFuture();
+
+    var error = assertThrows(CompletionException.class, rejected::join);
+    var cause = assertInstanceOf(AdmissionControl.Rejected.class, error.getCause());
+    assertEquals(Duration.ofSeconds(1), cause.retryAfter());
+    assertEquals("Too many registrations, retry after 1s", cause.getMessage());
+
+    // other countries have their own bucket
+    assertTrue(admission.admit("country:Portugal").toCompletableFuture().isDone());
+  }
+
+  @Test
+  public void keyByCallerWhenKnown() {
+    var admission = admissionControl(new Settings.Limit(1, 1), new Settings.Limit(1, 1), Duration.ZERO, 0);
+
+    assertEquals("caller:partner-a", admission.keyFor(Optional.of("partner-a"), "Belgium"));
+    assertEquals("country:Belgium", admission.keyFor(Optional.empty(), "Belgium"));
+  }
+
+  @Test
+  public void neverQueueMoreThanMaxQueued() throws Exception {
+    var admission = admissionControl(new Settings.Limit(1, 1), new Settings.Limit(1000, 1000), Duration.ofHours(1), 5);
+    admission.admit("country:Belgium").toCompletableFuture().join();
+
+    var executor = Executors.newFixedThreadPool(8);
+    var start = new CountDownLatch(1);
+    var delayed = new AtomicInteger();
+    var attempts = new ArrayList<Future<?>>();
+    for (int i = 0; i < 50; i++) {
+      attempts.add(executor.submit(() -> {
+        start.await();
+        var admitted = admission.admit("country:Belgium").toCompletableFuture();
+        if (!admitted.isCompletedExceptionally()) delayed.incrementAndGet();
+        return null;
+      }));
+    }
+    start.countDown();
+    for (var attempt : attempts) attempt.get();
+    executor.shutdownNow();
+
+    assertEquals(5, delayed.get());
+    assertEquals(5, admission.queued());
+  }
+}
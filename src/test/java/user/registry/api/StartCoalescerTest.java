@@ -0,0 +1,109 @@
+package user.registry.api;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import user.registry.api.workflows.UserCreationWorkflow;
+import user.registry.entities.UserEntity;
+import user.registry.metrics.RegistryMetrics;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class StartCoalescerTest {
+
+  private final UserCreationWorkflow.State state =
+    new UserCreationWorkflow.State(
+      "001",
+      new UserEntity.Create("John", "Belgium", "john@acme.com"),
+      UserCreationWorkflow.Status.RESERVING_EMAIL,
+      Optional.empty(),
+      Instant.now(),
+      Optional.empty(),
+      Optional.empty());
+
+  @Test
+  public void coalesceConcurrentStarts() {
+    var coalescer = new StartCoalescer(10, Duration.ofMinutes(1), new RegistryMetrics(new SimpleMeterRegistry()));
+    var calls = new AtomicInteger();
+    var workflowReply = new CompletableFuture<UserCreationWorkflow.State>();
+
+    var first = coalescer.start("001", () -> {
+      calls.incrementAndGet();
+      return workflowReply;
+    });
+    var second = coalescer.start("001", () -> {
+      calls.incrementAndGet();
+      return workflowReply;
+    });
+
+    workflowReply.complete(state);
+    assertSame(state, first.toCompletableFuture().join());
+    assertSame(state, second.toCompletableFuture().join());
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void replayRepliesOfEndedWorkflows() {
+    var coalescer = new StartCoalescer(10, Duration.ofMinutes(1), new RegistryMetrics(new SimpleMeterRegistry()));
+    var calls = new AtomicInteger();
+    var finished = state.withStatus(UserCreationWorkflow.Status.FINISHED);
+
+    coalescer.start("001", () -> {
+      calls.incrementAndGet();
+      return CompletableFuture.completedFuture(finished);
+    }).toCompletableFuture().join();
+
+    var replayed = coalescer.start("001", () -> {
+      calls.incrementAndGet();
+      return CompletableFuture.completedFuture(finished);
+    });
+
+    assertSame(finished, replayed.toCompletableFuture().join());
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void doNotRememberRunningOrPausedWorkflows() {
+    var coalescer = new StartCoalescer(10, Duration.ofMinutes(1), new RegistryMetrics(new SimpleMeterRegistry()));
+    var calls = new AtomicInteger();
+
+    coalescer.start("001", () -> {
+      calls.incrementAndGet();
+      return CompletableFuture.completedFuture(state);
+    }).toCompletableFuture().join();
+    coalescer.start("001", () -> {
+      calls.incrementAndGet();
+      return CompletableFuture.completedFuture(state.withStatus(UserCreationWorkflow.Status.PAUSED));
+    }).toCompletableFuture().join();
+    var resumed = coalescer.start("001", () -> {
+      calls.incrementAndGet();
+      return CompletableFuture.completedFuture(state);
+    });
+
+    assertSame(state, resumed.toCompletableFuture().join());
+    assertEquals(3, calls.get());
+  }
+
+  @Test
+  public void doNotRememberFailures() {
+    var coalescer = new StartCoalescer(10, Duration.ofMinutes(1), new RegistryMetrics(new SimpleMeterRegistry()));
+    var calls = new AtomicInteger();
+
+    coalescer.start("001", () -> {
+      calls.incrementAndGet();
+      return CompletableFuture.failedFuture(new RuntimeException("boom"));
+    });
+    coalescer.start("001", () -> {
+      calls.incrementAndGet();
+      return CompletableFuture.completedFuture(state);
+    }).toCompletableFuture().join();
+
+    assertEquals(2, calls.get());
+  }
+}
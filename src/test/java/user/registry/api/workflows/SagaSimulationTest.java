@@ -0,0 +1,122 @@
+package user.registry.api.workflows;
+
+import com.typesafe.config.ConfigFactory;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import user.registry.Settings;
+import user.registry.api.workflows.UserCreationWorkflow.Status;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs {@link SagaSimulator}, the number of workflows can be raised with -Dsimulation.sagas=1000000.
+ */
+public class SagaSimulationTest {
+
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  private final Settings settings = Settings.load(ConfigFactory.load());
+  private final int sagas = Integer.getInteger("simulation.sagas", 100_000);
+
+  private static Settings.Fault fault(double errorRate, long latencyMillis, long p99Millis) {
+    return new Settings.Fault(errorRate, Duration.ofMillis(latencyMillis), Duration.ofMillis(p99Millis));
+  }
+
+  private SagaSimulator.Config config(long seed, int sagas) {
+    return config(seed, sagas, false);
+  }
+
+  private SagaSimulator.Config config(long seed, int sagas, boolean speculative) {
+    return new SagaSimulator.Config(
+      seed,
+      sagas,
+      5000,
+      0.1,
+      100,
+      speculative,
+      Duration.ZERO,
+      fault(0.05, 5, 50),
+      fault(0.01, 2, 20),
+      fault(0.01, 2, 20));
+  }
+
+  private SagaSimulator.Report simulate(SagaSimulator.Config config) {
+    var started = System.nanoTime();
+    var report = new SagaSimulator(config, settings).run();
+    logger.info("Simulated {} events in {}ms: {}", report.events(), (System.nanoTime() - started) / 1_000_000, report);
+    return report;
+  }
+
+  @Test
+  public void noInvariantViolations() {
+    var report = simulate(config(42, sagas));
+
+    assertEquals(0, report.duplicateOwners());
+    assertEquals(0, report.orphanedReservations());
+    assertEquals(0, report.usersWithoutEmail());
+    assertEquals(0, report.staleStatuses());
+
+    var statuses = report.statuses();
+    assertEquals(sagas, statuses.values().stream().mapToInt(Integer::intValue).sum());
+    // contended hot emails pause the workflows that lost the race
+    assertTrue(statuses.getOrDefault(Status.PAUSED, 0) > 0);
+    assertTrue(statuses.getOrDefault(Status.FINISHED, 0) > sagas * 0.8);
+  }
+
+  @Test
+  public void noInvariantViolationsInSpeculativeMode() {
+    var report = simulate(config(42, sagas, true));
+
+    assertEquals(0, report.duplicateOwners());
+    assertEquals(0, report.orphanedReservations());
+    assertEquals(0, report.usersWithoutEmail());
+    assertEquals(0, report.staleStatuses());
+
+    var statuses = report.statuses();
+    assertTrue(statuses.getOrDefault(Status.PAUSED, 0) > 0);
+    assertTrue(statuses.getOrDefault(Status.FINISHED, 0) > sagas * 0.8);
+  }
+
+  /**
+   * Reservations expire while the users are created, some of them are taken over by other workflows.
+   * Their confirmation fails, the user is removed again and the workflow pauses.
+   */
+  @Test
+  public void lostReservationsRemoveTheUser() {
+    var config = new SagaSimulator.Config(42, 10_000, 1000, 0.5, 10, false, Duration.ofMillis(20),
+      fault(0, 20, 200), fault(0, 2, 20), fault(0, 2, 20));
+
+    var report = simulate(config);
+
+    assertTrue(report.lostReservations() > 0);
+    assertTrue(report.statuses().getOrDefault(Status.PAUSED, 0) >= report.lostReservations());
+    assertEquals(0, report.duplicateOwners());
+    assertEquals(0, report.orphanedReservations());
+    assertEquals(0, report.usersWithoutEmail());
+    assertEquals(0, report.staleStatuses());
+  }
+
+  @Test
+  public void reproducibleFromSeed() {
+    assertEquals(simulate(config(7, 10_000)), simulate(config(7, 10_000)));
+    assertNotEquals(simulate(config(7, 10_000)), simulate(config(8, 10_000)));
+  }
+
+  /**
+   * A reservation slower than the attempt timeout is applied, but the workflow pauses without it.
+   * The reservation stays until it expires, see ReservationExpiry.
+   */
+  @Test
+  public void slowReservationsAreLeftBehind() {
+    var config = new SagaSimulator.Config(42, 10_000, 1000, 0, 1, false, Duration.ZERO,
+      fault(0, 5, 50), fault(0, 2000, 20_000), fault(0, 2, 20));
+
+    var report = simulate(config);
+
+    assertTrue(report.orphanedReservations() > 0);
+    assertEquals(report.statuses().getOrDefault(Status.PAUSED, 0), report.orphanedReservations());
+    assertEquals(0, report.duplicateOwners());
+  }
+}
@@ -0,0 +1,545 @@
+package user.registry.api.workflows;
+
+import io.vavr.control.Either;
+import user.registry.Settings;
+import user.registry.api.workflows.UserCreationWorkflow.Status;
+import user.registry.entities.CreationStatusEntity;
+import user.registry.entities.UniqueEmailEntity;
+import user.registry.entities.UniqueEmailEntity.UniqueEmail;
+import user.registry.entities.UserEntity;
+import user.registry.faults.FaultInjector;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Discrete event simulation of many concurrent creation workflows in virtual time, on a single thread
+ * and reproducible from a seed.
+ * <p>
+ * The steps follow the step graph of UserCreationWorkflow, in its default or speculative mode: the
+ * status recorded when a step starts and by record-status, the compensations of a lost reservation,
+ * the retry policies and the retry budget of StepRetries, and the command handling of the UniqueEmail
+ * and User models shared with the entities. Every entity call has a latency and may fail as
+ * configured with {@link Settings.Fault}. A call slower than the attempt timeout fails for the
+ * workflow but is still applied by the entity, as it would be for real. A step that fails without a
+ * failover is run again, as Kalix does.
+ */
+class SagaSimulator {
+
+  /**
+   * @param reservationTtl reservations not confirmed within this time expire, as with ReservationExpiry.
+   *                       Zero to never expire them.
+   */
+  record Config(long seed,
+                int sagas,
+                double startsPerSecond,
+                double hotEmailRatio,
+                int hotEmails,
+                boolean speculative,
+                Duration reservationTtl,
+                Settings.Fault userEntity,
+                Settings.Fault uniqueEmailEntity,
+                Settings.Fault creationStatusEntity) {}
+
+  record Percentiles(int count, Duration p50, Duration p95, Duration p99, Duration max) {
+
+    static Percentiles of(List<Long> nanos) {
+      var sorted = nanos.stream().mapToLong(Long::longValue).sorted().toArray();
+      if (sorted.length == 0) return new Percentiles(0, Duration.ZERO, Duration.ZERO, Duration.ZERO, Duration.ZERO);
+      return new Percentiles(
+        sorted.length,
+        Duration.ofNanos(at(sorted, 0.50)),
+        Duration.ofNanos(at(sorted, 0.95)),
+        Duration.ofNanos(at(sorted, 0.99)),
+        Duration.ofNanos(sorted[sorted.length - 1]));
+    }
+
+    private static long at(long[] sorted, double p) {
+      return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)];
+    }
+  }
+
+  /**
+   * @param virtualDuration      until the last workflow ended
+   * @param lostReservations     confirmations that found the reservation expired or taken over
+   * @param duplicateOwners      emails confirmed for, or finished by, more than one user
+   * @param orphanedReservations emails left RESERVED once all workflows are done
+   * @param usersWithoutEmail    visible users whose email isn't confirmed for them
+   * @param staleStatuses        workflows whose recorded status isn't the one they ended with
+   */
+  record Report(int sagas,
+                Map<Status, Integer> statuses,
+                Duration virtualDuration,
+                double sagasPerSecond,
+                Map<String, Percentiles> stepLatencies,
+                Percentiles sagaLatency,
+                long events,
+                int lostReservations,
+                int duplicateOwners,
+                int orphanedReservations,
+                int usersWithoutEmail,
+                int staleStatuses) {}
+
+  private record Scheduled(long time, long sequence, Runnable action) {}
+
+  private static class Saga {
+    final String userId;
+    final UserEntity.Create cmd;
+    final long startedAt;
+    Status status = Status.RESERVING_EMAIL;
+
+    Saga(String userId, UserEntity.Create cmd, long startedAt) {
+      this.userId = userId;
+      this.cmd = cmd;
+      this.startedAt = startedAt;
+    }
+  }
+
+  private static final Instant EPOCH = Instant.parse("2023-06-01T00:00:00Z");
+
+  private final Config config;
+  private final Settings.Workflow settings;
+  private final Random random;
+  private final PriorityQueue<Scheduled> queue =
+    new PriorityQueue<>(Comparator.comparingLong(Scheduled::time).thenComparingLong(Scheduled::sequence));
+  private final StepRetries.Budget budget;
+
+  private final Map<String, UniqueEmail> emails = new HashMap<>();
+  private final Map<String, UserEntity.User> users = new HashMap<>();
+  private final Map<String, CreationStatusEntity.CreationStatus> recordedStatuses = new HashMap<>();
+  private final List<Saga> sagas = new ArrayList<>();
+  private final Map<String, List<Long>> stepLatencies = new TreeMap<>();
+  private final List<Long> sagaLatencies = new ArrayList<>();
+
+  private long now;
+  private long sequence;
+  private long events;
+  private int lostReservations;
+  // pending expirations may run after the last workflow ended
+  private long lastEnd;
+
+  SagaSimulator(Config config, Settings settings) {
+    this.config = config;
+    this.settings = settings.workflow();
+    this.random = new Random(config.seed());
+    this.budget = new StepRetries.Budget(this.settings.retryBudget(), new VirtualClock());
+  }
+
+  Report run() {
+    var arrival = 0L;
+    for (int i = 0; i < config.sagas(); i++) {
+      arrival += (long) (-Math.log(1 - random.nextDouble()) / config.startsPerSecond() * 1e9);
+      var userId = "user-" + i;
+      var email = random.nextDouble() < config.hotEmailRatio()
+        ? "hot-" + random.nextInt(config.hotEmails()) + "@acme.com"
+        : userId + "@acme.com";
+      var saga = new Saga(userId, new UserEntity.Create("User " + i, "Belgium", email), arrival);
+      sagas.add(saga);
+      at(arrival, () -> start(saga));
+    }
+
+    while (!queue.isEmpty()) {
+      var next = queue.poll();
+      now = next.time();
+      events++;
+      next.action().run();
+    }
+
+    return report();
+  }
+
+  //---------------------------------------------------------------------------------------------
+  // workflow steps
+
+  private void start(Saga saga) {
+    if (config.speculative()) {
+      saga.status = Status.RESERVING_EMAIL_AND_CREATING_USER;
+      reserveEmailAndCreateUser(saga);
+    } else {
+      saga.status = Status.RESERVING_EMAIL;
+      reserveEmail(saga);
+    }
+  }
+
+  private void reserveEmail(Saga saga) {
+    enterStep(saga);
+    step("reserve-email", config.uniqueEmailEntity(), () -> reserve(saga),
+      reserved -> {
+        if (reserved.isRight()) {
+          saga.status = Status.CREATING_USER;
+          createUser(saga);
+        } else {
+          saga.status = Status.PAUSED;
+          recordStatus(saga);
+        }
+      });
+  }
+
+  private void createUser(Saga saga) {
+    enterStep(saga);
+    step("create-user", config.userEntity(),
+      () -> {
+        if (saga.cmd.name() == null) return Either.left("Name is empty");
+        var existing = users.get(saga.userId);
+        if (existing != null && existing.provisional() && existing.sameAs(saga.cmd)) return Either.right(apply(saga.userId, existing.onActivate()));
+        if (existing != null) return existing.sameAs(saga.cmd) ? Either.right(existing) : Either.left("User already created");
+        return Either.right(apply(saga.userId, UserEntity.User.onCommand(saga.cmd)));
+      },
+      created -> {
+        if (created.isRight()) {
+          saga.status = Status.CONFIRMING_EMAIL;
+          confirmEmail(saga);
+        } else {
+          // failover once all attempts failed
+          unReserveEmail(saga);
+        }
+      });
+  }
+
+  private void confirmEmail(Saga saga) {
+    enterStep(saga);
+    step("confirm-email", config.uniqueEmailEntity(), () -> confirm(saga),
+      confirmed -> onConfirmation(saga, confirmed, () -> confirmEmail(saga)));
+  }
+
+  private void confirmEmailAndActivateUser(Saga saga) {
+    enterStep(saga);
+    step("confirm-email", config.uniqueEmailEntity(), () -> confirm(saga),
+      confirmed -> {
+        if (confirmed.isLeft() || !confirmed.get()) {
+          onConfirmation(saga, confirmed, () -> confirmEmailAndActivateUser(saga));
+          return;
+        }
+        step("activate-user", config.userEntity(),
+          () -> {
+            var existing = users.get(saga.userId);
+            if (existing == null) return Either.left("User not found");
+            return Either.right(existing.provisional() ? apply(saga.userId, existing.onActivate()) : existing);
+          },
+          activated -> onConfirmation(saga, activated.map(__ -> true), () -> confirmEmailAndActivateUser(saga)));
+      });
+  }
+
+  /**
+   * The workflow is done once the email is confirmed. A lost reservation removes the user again.
+   */
+  private void onConfirmation(Saga saga, Either<String, Boolean> confirmed, Runnable runAgain) {
+    if (confirmed.isLeft()) {
+      runAgain.run();
+    } else if (confirmed.get()) {
+      saga.status = Status.FINISHED;
+      recordStatus(saga);
+    } else {
+      lostReservations++;
+      saga.status = Status.REMOVING_USER;
+      removeUser(saga);
+    }
+  }
+
+  private void removeUser(Saga saga) {
+    enterStep(saga);
+    step("remove-user", config.userEntity(),
+      () -> {
+        var existing = users.get(saga.userId);
+        return Either.right(existing == null ? Optional.empty() : Optional.ofNullable(apply(saga.userId, List.of(existing.onRemove()))));
+      },
+      removed -> {
+        if (removed.isRight()) {
+          saga.status = Status.PAUSED;
+          recordStatus(saga);
+        } else {
+          removeUser(saga);
+        }
+      });
+  }
+
+  private void unReserveEmail(Saga saga) {
+    enterStep(saga);
+    var email = saga.cmd.email();
+    step("un-reserve-email", config.uniqueEmailEntity(),
+      () -> updateEmail(email, current -> Either.right(current.onCommand(new UniqueEmailEntity.UnReserveEmail(saga.userId)))),
+      unReserved -> {
+        if (unReserved.isRight()) {
+          saga.status = Status.FAILED;
+          recordStatus(saga);
+        } else {
+          unReserveEmail(saga);
+        }
+      });
+  }
+
+  /**
+   * Speculative mode: the reservation with its retries, and a single attempt at creating the
+   * provisional user, at the same time.
+   */
+  private void reserveEmailAndCreateUser(Saga saga) {
+    enterStep(saga);
+    // whether the reservation and the creation succeeded, null until they're done
+    var outcomes = new Boolean[2];
+    Runnable onBoth = () -> {
+      if (outcomes[0] == null || outcomes[1] == null) return;
+      var reserved = outcomes[0];
+      var created = outcomes[1];
+      if (!reserved && !created) {
+        saga.status = Status.PAUSED;
+        recordStatus(saga);
+      } else if (!reserved) {
+        saga.status = Status.REMOVING_USER;
+        removeUser(saga);
+      } else if (!created) {
+        saga.status = Status.CREATING_USER;
+        createUser(saga);
+      } else {
+        saga.status = Status.CONFIRMING_EMAIL;
+        confirmEmailAndActivateUser(saga);
+      }
+    };
+
+    step("reserve-email", config.uniqueEmailEntity(), () -> reserve(saga),
+      reserved -> {
+        outcomes[0] = reserved.isRight();
+        onBoth.run();
+      });
+    stepOnce("create-user", config.userEntity(),
+      () -> {
+        if (saga.cmd.name() == null) return Either.left("Name is empty");
+        if (users.containsKey(saga.userId)) return Either.left("User already created");
+        return Either.right(apply(saga.userId, List.of(UserEntity.User.onProvisionalCommand(saga.cmd))));
+      },
+      created -> {
+        outcomes[1] = created.isRight();
+        onBoth.run();
+      });
+  }
+
+  /**
+   * The outcome is recorded until it succeeds, then the workflow ends. The recording is timestamped
+   * once per run of the step, like the real one.
+   */
+  private void recordStatus(Saga saga) {
+    var status = new CreationStatusEntity.CreationStatus(saga.userId, saga.status.name(), "", now);
+    step("record-status", config.creationStatusEntity(), () -> record(status),
+      recorded -> {
+        if (recorded.isRight()) end(saga);
+        else recordStatus(saga);
+      });
+  }
+
+  /**
+   * Best effort recording of the status a step runs in, the step doesn't wait for it.
+   */
+  private void enterStep(Saga saga) {
+    var status = new CreationStatusEntity.CreationStatus(saga.userId, saga.status.name(), "", now);
+    call(config.creationStatusEntity(), settings.stepPolicy("record-status").attemptTimeout(), () -> record(status), __ -> {});
+  }
+
+  private void end(Saga saga) {
+    sagaLatencies.add(now - saga.startedAt);
+    lastEnd = now;
+  }
+
+  //---------------------------------------------------------------------------------------------
+  // entity commands
+
+  private Either<String, UniqueEmail> reserve(Saga saga) {
+    var email = saga.cmd.email();
+    var cmd = new UniqueEmailEntity.ReserveEmail(email, saga.userId);
+    return updateEmail(email, current -> current.onCommand(cmd, virtualNow()));
+  }
+
+  /**
+   * A lost reservation is a result of the step, only other failures are retried.
+   */
+  private Either<String, Boolean> confirm(Saga saga) {
+    var confirmed = updateEmail(saga.cmd.email(), current -> current.onCommand(new UniqueEmailEntity.ConfirmEmail(saga.userId)));
+    return Either.right(confirmed.isRight());
+  }
+
+  private Either<String, CreationStatusEntity.CreationStatus> record(CreationStatusEntity.CreationStatus status) {
+    var current = recordedStatuses.get(status.userId());
+    // a late recording doesn't overwrite a newer one
+    if (current != null && current.updatedAt() > status.updatedAt()) return Either.right(current);
+    recordedStatuses.put(status.userId(), status);
+    return Either.right(status);
+  }
+
+  private UserEntity.User apply(String userId, Iterable<? extends UserEntity.Event> events) {
+    var user = users.get(userId);
+    for (var event : events) {
+      user = UserEntity.applyEvent(user, event);
+    }
+    if (user == null) users.remove(userId);
+    else users.put(userId, user);
+    return user;
+  }
+
+  //---------------------------------------------------------------------------------------------
+  // retries and entity calls
+
+  /**
+   * Runs the attempts of a step as StepRetries does, and passes on the reply of the first successful
+   * attempt, or the error of the last one.
+   */
+  private <T> void step(String step, Settings.Fault fault, Supplier<Either<String, T>> command, Consumer<Either<String, T>> onResult) {
+    var policy = settings.stepPolicy(step);
+    budget.deposit();
+    attempts(step, policy, policy.maxAttempts(), fault, command, onResult);
+  }
+
+  /**
+   * A single attempt, without retries.
+   */
+  private <T> void stepOnce(String step, Settings.Fault fault, Supplier<Either<String, T>> command, Consumer<Either<String, T>> onResult) {
+    attempts(step, settings.stepPolicy(step), 1, fault, command, onResult);
+  }
+
+  private <T> void attempts(String step,
+                            Settings.StepPolicy policy,
+                            int maxAttempts,
+                            Settings.Fault fault,
+                            Supplier<Either<String, T>> command,
+                            Consumer<Either<String, T>> onResult) {
+    var startedAt = now;
+    attempt(policy, maxAttempts, fault, command, 1, result -> {
+      stepLatencies.computeIfAbsent(step, __ -> new ArrayList<>()).add(now - startedAt);
+      onResult.accept(result);
+    });
+  }
+
+  private <T> void attempt(Settings.StepPolicy policy,
+                           int maxAttempts,
+                           Settings.Fault fault,
+                           Supplier<Either<String, T>> command,
+                           int attempt,
+                           Consumer<Either<String, T>> onResult) {
+    call(fault, policy.attemptTimeout(), command, result -> {
+      if (result.isRight() || attempt >= maxAttempts || !budget.tryWithdraw()) {
+        onResult.accept(result);
+      } else {
+        var delay = StepRetries.backoff(policy, attempt, random);
+        after(delay.toNanos(), () -> attempt(policy, maxAttempts, fault, command, attempt + 1, onResult));
+      }
+    });
+  }
+
+  /**
+   * The command reaches the entity halfway through the latency of the call. The caller gets the
+   * reply, or a timeout if the call is slower than the attempt timeout.
+   */
+  private <T> void call(Settings.Fault fault, Duration timeout, Supplier<Either<String, T>> command, Consumer<Either<String, T>> reply) {
+    var latency = FaultInjector.latency(fault, random).toNanos();
+    var failed = random.nextDouble() < fault.errorRate();
+    var timedOut = latency > timeout.toNanos();
+
+    after(latency / 2, () -> {
+      Either<String, T> result = failed ? Either.left("injected failure") : command.get();
+      if (!timedOut) {
+        after(latency - latency / 2, () -> reply.accept(result));
+      }
+    });
+    if (timedOut) {
+      after(timeout.toNanos(), () -> reply.accept(Either.left("timeout")));
+    }
+  }
+
+  private Either<String, UniqueEmail> updateEmail(String address,
+                                                  Function<UniqueEmail, Either<String, UniqueEmail>> command) {
+    var current = emails.getOrDefault(address, UniqueEmail.notUsed(address));
+    var result = command.apply(current);
+    result.forEach(updated -> {
+      emails.put(address, updated);
+      if (updated != current && updated.isReserved() && !config.reservationTtl().isZero()) {
+        // the timer of ReservationExpiry
+        var reservedAt = updated.reservedAt().orElseThrow().toEpochMilli();
+        after(config.reservationTtl().toNanos(), () ->
+          updateEmail(address, expiring -> Either.right(expiring.onCommand(new UniqueEmailEntity.ExpireReservation(reservedAt)))));
+      }
+    });
+    return result;
+  }
+
+  private void at(long time, Runnable action) {
+    queue.add(new Scheduled(time, sequence++, action));
+  }
+
+  private void after(long delayNanos, Runnable action) {
+    at(now + delayNanos, action);
+  }
+
+  private Instant virtualNow() {
+    return EPOCH.plusNanos(now);
+  }
+
+  private class VirtualClock extends Clock {
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return virtualNow();
+    }
+  }
+
+  //---------------------------------------------------------------------------------------------
+  // report
+
+  private Report report() {
+    var statuses = new EnumMap<Status, Integer>(Status.class);
+    sagas.forEach(saga -> statuses.merge(saga.status, 1, Integer::sum));
+
+    var finishedByEmail = new HashMap<String, Integer>();
+    sagas.stream()
+      .filter(saga -> saga.status == Status.FINISHED)
+      .forEach(saga -> finishedByEmail.merge(saga.cmd.email(), 1, Integer::sum));
+    var duplicateOwners = (int) finishedByEmail.values().stream().filter(count -> count > 1).count();
+
+    var orphanedReservations = (int) emails.values().stream().filter(UniqueEmail::isReserved).count();
+
+    // provisional users left behind by a paused speculative workflow are never visible
+    var usersWithoutEmail = (int) users.entrySet().stream()
+      .filter(user -> !user.getValue().provisional())
+      .filter(user -> {
+        var email = emails.get(user.getValue().email());
+        return email == null || email.status() != UniqueEmailEntity.Status.CONFIRMED || email.notSameOwner(user.getKey());
+      })
+      .count();
+
+    var staleStatuses = (int) sagas.stream()
+      .filter(saga -> {
+        var recorded = recordedStatuses.get(saga.userId);
+        return recorded == null || !recorded.status().equals(saga.status.name());
+      })
+      .count();
+
+    var latencies = new TreeMap<String, Percentiles>();
+    stepLatencies.forEach((step, nanos) -> latencies.put(step, Percentiles.of(nanos)));
+
+    return new Report(
+      sagas.size(),
+      statuses,
+      Duration.ofNanos(lastEnd),
+      lastEnd == 0 ? 0 : sagas.size() / (lastEnd / 1e9),
+      latencies,
+      Percentiles.of(sagaLatencies),
+      events,
+      lostReservations,
+      duplicateOwners,
+      orphanedReservations,
+      usersWithoutEmail,
+      staleStatuses);
+  }
+}
@@ -0,0 +1,108 @@
+package user.registry.api.workflows;
+
+import com.typesafe.config.ConfigFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import user.registry.Settings;
+import user.registry.metrics.RegistryMetrics;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StepRetriesTest {
+
+  private final Settings settings = Settings.load(ConfigFactory.load());
+
+  @Test
+  public void retryUntilSuccess() {
+    var retries = new StepRetries(settings, new RegistryMetrics(new SimpleMeterRegistry()));
+    var calls = new AtomicInteger();
+
+    var result = retries.run("create-user", () ->
+      calls.incrementAndGet() < 3
+        ? CompletableFuture.failedFuture(new RuntimeException("boom"))
+        : CompletableFuture.completedFuture("done"));
+
+    assertEquals("done", result.toCompletableFuture().join());
+    assertEquals(3, calls.get());
+  }
+
+  @Test
+  public void failAfterMaxAttempts() {
+    var retries = new StepRetries(settings, new RegistryMetrics(new SimpleMeterRegistry()));
+    var calls = new AtomicInteger();
+
+    var result = retries.run("reserve-email", () -> {
+      calls.incrementAndGet();
+      return CompletableFuture.failedFuture(new RuntimeException("taken"));
+    });
+
+    assertThrows(CompletionException.class, () -> result.toCompletableFuture().join());
+    // reserve-email is configured without retries
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void backoffGrowsUpToMaxWithinJitter() {
+    var policy = new Settings.StepPolicy(Duration.ofSeconds(1), 10, Duration.ofMillis(100), Duration.ofMillis(1000), 0.2);
+
+    for (int i = 0; i < 100; i++) {
+      var first = StepRetries.backoff(policy, 1).toMillis();
+      assertTrue(first >= 80 && first <= 120, "first backoff " + first);
+
+      var third = StepRetries.backoff(policy, 3).toMillis();
+      assertTrue(third >= 320 && third <= 480, "third backoff " + third);
+
+      var capped = StepRetries.backoff(policy, 8).toMillis();
+      assertTrue(capped >= 800 && capped <= 1200, "capped backoff " + capped);
+    }
+  }
+
+  @Test
+  public void budgetLimitsRetries() {
+    var clock = Clock.fixed(Instant.parse("2023-06-01T10:00:00Z"), ZoneOffset.UTC);
+    var budget = new StepRetries.Budget(new Settings.RetryBudget(0.5, 2, 100), clock);
+
+    assertTrue(budget.tryWithdraw());
+    assertTrue(budget.tryWithdraw());
+    assertFalse(budget.tryWithdraw());
+
+    // two first attempts earn one retry
+    budget.deposit();
+    budget.deposit();
+    assertTrue(budget.tryWithdraw());
+    assertFalse(budget.tryWithdraw());
+  }
+
+  @Test
+  public void budgetFollowsTheLoad() {
+    var clock = Clock.fixed(Instant.parse("2023-06-01T10:00:00Z"), ZoneOffset.UTC);
+    var budget = new StepRetries.Budget(new Settings.RetryBudget(0.25, 10, 1000), clock);
+
+    // a second with 1000 first attempts earns 250 retries on top of the 10 per second
+    for (int i = 0; i < 1000; i++) budget.deposit();
+
+    var retries = 0;
+    while (budget.tryWithdraw()) retries++;
+    assertEquals(260, retries);
+  }
+
+  @Test
+  public void budgetKeepsAtMostMaxRatioTokens() {
+    var clock = Clock.fixed(Instant.parse("2023-06-01T10:00:00Z"), ZoneOffset.UTC);
+    var budget = new StepRetries.Budget(new Settings.RetryBudget(0.5, 0, 3), clock);
+
+    for (int i = 0; i < 100; i++) budget.deposit();
+
+    var retries = 0;
+    while (budget.tryWithdraw()) retries++;
+    assertEquals(3, retries);
+  }
+}
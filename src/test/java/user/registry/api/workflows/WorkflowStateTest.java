@@ -0,0 +1,53 @@
+package user.registry.api.workflows;
+
+import kalix.javasdk.JsonSupport;
+import org.junit.jupiter.api.Test;
+import user.registry.entities.UserEntity;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class WorkflowStateTest {
+
+  private final UserCreationWorkflow.State finished =
+    new UserCreationWorkflow.State(
+      "001",
+      new UserEntity.Create("John", "Belgium", "john@acme.com"),
+      UserCreationWorkflow.Status.FINISHED,
+      Optional.empty(),
+      Instant.parse("2023-06-01T10:15:30Z"),
+      Optional.of("00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01"),
+      Optional.empty());
+
+  @Test
+  public void archivedStateKeepsOutcomeAndEmail() {
+    var archivedAt = Instant.parse("2023-06-08T10:15:30Z");
+    var archived = finished.archived(archivedAt);
+
+    assertEquals("001", archived.userId());
+    assertEquals(UserCreationWorkflow.Status.FINISHED, archived.status());
+    assertEquals("john@acme.com", archived.createCmd().email());
+    assertEquals(finished.startedAt(), archived.startedAt());
+    assertEquals(Optional.of(archivedAt), archived.archivedAt());
+
+    assertNull(archived.createCmd().name());
+    assertNull(archived.createCmd().country());
+    assertFalse(archived.traceparent().isPresent());
+  }
+
+  @Test
+  public void readStateWrittenBeforeArchiving() throws Exception {
+    var json = """
+      {"userId":"001","createCmd":{"name":"John","country":"Belgium","email":"john@acme.com"},"status":"FINISHED","startedAt":"2023-06-01T10:15:30Z"}
+      """;
+
+    var state = JsonSupport.getObjectMapper().readValue(json, UserCreationWorkflow.State.class);
+
+    assertEquals(UserCreationWorkflow.Status.FINISHED, state.status());
+    assertEquals(Optional.empty(), state.archivedAt());
+  }
+}
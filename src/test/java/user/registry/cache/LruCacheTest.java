@@ -0,0 +1,78 @@
+package user.registry.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LruCacheTest {
+
+  @Test
+  public void evictLeastRecentlyUsed() {
+    var cache = new LruCache<String, String>(2, Duration.ZERO);
+    cache.put("a", "1");
+    cache.put("b", "2");
+    cache.get("a");
+    cache.put("c", "3");
+
+    assertEquals(Optional.of("1"), cache.get("a"));
+    assertEquals(Optional.empty(), cache.get("b"));
+    assertEquals(Optional.of("3"), cache.get("c"));
+    assertEquals(1, cache.evictions());
+    assertEquals(3, cache.hits());
+    assertEquals(1, cache.misses());
+  }
+
+  @Test
+  public void expireAfterTtl() {
+    var clock = new TestClock(Instant.parse("2023-06-01T10:00:00Z"));
+    var cache = new LruCache<String, String>(10, Duration.ofSeconds(30), clock);
+    cache.put("a", "1");
+    assertEquals(Optional.of("1"), cache.get("a"));
+
+    clock.advance(Duration.ofSeconds(31));
+    assertEquals(Optional.empty(), cache.get("a"));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void invalidateEntry() {
+    var cache = new LruCache<String, String>(10, Duration.ZERO);
+    cache.put("a", "1");
+    cache.invalidate("a");
+    assertEquals(Optional.empty(), cache.get("a"));
+  }
+
+  static class TestClock extends Clock {
+    private Instant now;
+
+    TestClock(Instant now) {
+      this.now = now;
+    }
+
+    void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+}
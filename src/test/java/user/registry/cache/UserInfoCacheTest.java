@@ -0,0 +1,57 @@
+package user.registry.cache;
+
+import org.junit.jupiter.api.Test;
+import user.registry.api.UserInfo;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class UserInfoCacheTest {
+
+  private final UserInfo john = new UserInfo("001", "John", "Belgium", "john@acme.com");
+
+  @Test
+  public void cacheProfileReadWithoutInvalidation() {
+    var cache = new UserInfoCache(10, Duration.ZERO);
+    var stamp = cache.stamp();
+    cache.put(john, stamp);
+
+    assertEquals(Optional.of(john), cache.get("001"));
+  }
+
+  @Test
+  public void dropProfileReadBeforeInvalidation() {
+    var cache = new UserInfoCache(10, Duration.ZERO);
+    var stamp = cache.stamp();
+    // the email changes while the previous profile is being read
+    cache.invalidate("001");
+    cache.put(john, stamp);
+
+    assertEquals(Optional.empty(), cache.get("001"));
+  }
+
+  @Test
+  public void cacheProfileReadDuringInvalidationOfAnotherUser() {
+    var cache = new UserInfoCache(10, Duration.ZERO);
+    var stamp = cache.stamp();
+    cache.invalidate("002");
+    cache.put(john, stamp);
+
+    assertEquals(Optional.of(john), cache.get("001"));
+  }
+
+  @Test
+  public void dropProfileReadBeforeInvalidationOfAForgottenUser() {
+    var cache = new UserInfoCache(2, Duration.ZERO);
+    var stamp = cache.stamp();
+    cache.invalidate("001");
+    // 001 is pushed out of the tracked invalidations
+    cache.invalidate("002");
+    cache.invalidate("003");
+    cache.put(john, stamp);
+
+    assertEquals(Optional.empty(), cache.get("001"));
+  }
+}
@@ -0,0 +1,82 @@
+package user.registry.entities;
+
+import org.junit.jupiter.api.Test;
+
+import kalix.javasdk.testkit.ValueEntityTestKit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class CountryCounterEntityTest {
+
+  @Test
+  public void countAddedAndRemovedUsers() {
+    var counterTestKit = ValueEntityTestKit.of("Belgium:0", CountryCounterEntity::new);
+
+    counterTestKit.call(counter -> counter.update(added("001", "1")));
+    counterTestKit.call(counter -> counter.update(added("002", "1")));
+    assertEquals(2, counterTestKit.getState().count());
+
+    counterTestKit.call(counter -> counter.update(removed("001", "2")));
+    assertEquals(1, counterTestKit.getState().count());
+  }
+
+  @Test
+  public void ignoreRedeliveredUpdates() {
+    var counterTestKit = ValueEntityTestKit.of("Belgium:0", CountryCounterEntity::new);
+
+    counterTestKit.call(counter -> counter.update(added("001", "1")));
+    var redelivered = counterTestKit.call(counter -> counter.update(added("001", "1")));
+
+    assertFalse(redelivered.stateWasUpdated());
+    assertEquals(1, counterTestKit.getState().count());
+  }
+
+  @Test
+  public void countUserAddedAgainAfterRemoval() {
+    var counterTestKit = ValueEntityTestKit.of("Belgium:0", CountryCounterEntity::new);
+
+    counterTestKit.call(counter -> counter.update(added("001", "1")));
+    counterTestKit.call(counter -> counter.update(removed("001", "2")));
+    counterTestKit.call(counter -> counter.update(added("001", "3")));
+
+    assertEquals(1, counterTestKit.getState().count());
+  }
+
+  @Test
+  public void countRedeliveryOlderThanTheWindowAgain() {
+    var counterTestKit = ValueEntityTestKit.of("Belgium:0", CountryCounterEntity::new);
+
+    counterTestKit.call(counter -> counter.update(added("001", "1")));
+    for (int i = 0; i < CountryCounterEntity.RECENT_UPDATES; i++) {
+      var userId = "user-" + i;
+      counterTestKit.call(counter -> counter.update(added(userId, "1")));
+    }
+    counterTestKit.call(counter -> counter.update(added("001", "1")));
+
+    // the documented limit of the deduplication
+    assertEquals(CountryCounterEntity.RECENT_UPDATES + 2, counterTestKit.getState().count());
+  }
+
+  @Test
+  public void rememberOnlyTheLastUpdates() {
+    var counterTestKit = ValueEntityTestKit.of("Belgium:0", CountryCounterEntity::new);
+
+    for (int i = 0; i < CountryCounterEntity.RECENT_UPDATES * 3; i++) {
+      var userId = "user-" + i;
+      counterTestKit.call(counter -> counter.update(added(userId, "1")));
+    }
+
+    var state = counterTestKit.getState();
+    assertEquals(CountryCounterEntity.RECENT_UPDATES, state.recentUpdates().size());
+    assertEquals("user-" + (CountryCounterEntity.RECENT_UPDATES * 3 - 1) + "@1", state.recentUpdates().get(CountryCounterEntity.RECENT_UPDATES - 1));
+  }
+
+  private static CountryCounterEntity.Update added(String userId, String eventId) {
+    return new CountryCounterEntity.Update("Belgium", 0, userId, 1, eventId);
+  }
+
+  private static CountryCounterEntity.Update removed(String userId, String eventId) {
+    return new CountryCounterEntity.Update("Belgium", 0, userId, -1, eventId);
+  }
+}
@@ -0,0 +1,143 @@
+package user.registry.entities;
+
+import io.grpc.Status;
+import org.junit.jupiter.api.Test;
+
+import kalix.javasdk.testkit.ValueEntityTestKit;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UniqueEmailEntityTest {
+
+  private final String address = "john@acme.com";
+
+  @Test
+  public void confirmReservation() {
+    var emailTestKit = ValueEntityTestKit.of(address, UniqueEmailEntity::new);
+    emailTestKit.call(email -> email.reserve(new UniqueEmailEntity.ReserveEmail(address, "001")));
+
+    var confirmRes = emailTestKit.call(email -> email.confirm(new UniqueEmailEntity.ConfirmEmail("001")));
+    assertTrue(confirmRes.isReply());
+    assertEquals(UniqueEmailEntity.Status.CONFIRMED, emailTestKit.getState().status());
+
+    var againRes = emailTestKit.call(email -> email.confirm(new UniqueEmailEntity.ConfirmEmail("001")));
+    assertTrue(againRes.isReply());
+    assertFalse(againRes.stateWasUpdated());
+  }
+
+  @Test
+  public void failToConfirmExpiredReservation() {
+    var emailTestKit = ValueEntityTestKit.of(address, UniqueEmailEntity::new);
+    emailTestKit.call(email -> email.reserve(new UniqueEmailEntity.ReserveEmail(address, "001")));
+    var reservedAt = emailTestKit.getState().reservedAt().get().toEpochMilli();
+    emailTestKit.call(email -> email.expire(new UniqueEmailEntity.ExpireReservation(reservedAt)));
+
+    var confirmRes = emailTestKit.call(email -> email.confirm(new UniqueEmailEntity.ConfirmEmail("001")));
+    assertTrue(confirmRes.isError());
+    assertEquals(Status.Code.ALREADY_EXISTS, confirmRes.getErrorStatusCode());
+    assertEquals(UniqueEmailEntity.Status.NOT_USED, emailTestKit.getState().status());
+  }
+
+  @Test
+  public void failToConfirmReservationOfSomeoneElse() {
+    var emailTestKit = ValueEntityTestKit.of(address, UniqueEmailEntity::new);
+    emailTestKit.call(email -> email.reserve(new UniqueEmailEntity.ReserveEmail(address, "002")));
+
+    var confirmRes = emailTestKit.call(email -> email.confirm(new UniqueEmailEntity.ConfirmEmail("001")));
+    assertTrue(confirmRes.isError());
+    assertEquals(UniqueEmailEntity.Status.RESERVED, emailTestKit.getState().status());
+    assertEquals(Optional.of("002"), emailTestKit.getState().ownerId());
+  }
+
+  @Test
+  public void assignFreeAddress() {
+    var emailTestKit = ValueEntityTestKit.of(address, UniqueEmailEntity::new);
+
+    var assignRes = emailTestKit.call(email -> email.assign(new UniqueEmailEntity.ReserveEmail(address, "001")));
+    assertTrue(assignRes.isReply());
+    assertEquals(UniqueEmailEntity.Status.CONFIRMED, emailTestKit.getState().status());
+    assertEquals(Optional.of("001"), emailTestKit.getState().ownerId());
+
+    var againRes = emailTestKit.call(email -> email.assign(new UniqueEmailEntity.ReserveEmail(address, "001")));
+    assertTrue(againRes.isReply());
+    assertFalse(againRes.stateWasUpdated());
+  }
+
+  @Test
+  public void failToAssignAddressOfSomeoneElse() {
+    var emailTestKit = ValueEntityTestKit.of(address, UniqueEmailEntity::new);
+    emailTestKit.call(email -> email.assign(new UniqueEmailEntity.ReserveEmail(address, "002")));
+
+    var assignRes = emailTestKit.call(email -> email.assign(new UniqueEmailEntity.ReserveEmail(address, "001")));
+    assertTrue(assignRes.isError());
+    assertEquals(Optional.of("002"), emailTestKit.getState().ownerId());
+  }
+
+  @Test
+  public void releaseOnlyByTheOwner() {
+    var emailTestKit = ValueEntityTestKit.of(address, UniqueEmailEntity::new);
+    emailTestKit.call(email -> email.assign(new UniqueEmailEntity.ReserveEmail(address, "001")));
+
+    var otherRes = emailTestKit.call(email -> email.release(new UniqueEmailEntity.ReleaseEmail("002")));
+    assertFalse(otherRes.stateWasUpdated());
+    assertEquals(UniqueEmailEntity.Status.CONFIRMED, emailTestKit.getState().status());
+
+    var ownerRes = emailTestKit.call(email -> email.release(new UniqueEmailEntity.ReleaseEmail("001")));
+    assertTrue(ownerRes.stateWasUpdated());
+    assertEquals(UniqueEmailEntity.Status.NOT_USED, emailTestKit.getState().status());
+  }
+
+  @Test
+  public void expireOnlyTheSameReservation() {
+    var emailTestKit = ValueEntityTestKit.of(address, UniqueEmailEntity::new);
+    emailTestKit.call(email -> email.reserve(new UniqueEmailEntity.ReserveEmail(address, "001")));
+    var reservedAt = emailTestKit.getState().reservedAt().get().toEpochMilli();
+
+    // the timer of an earlier reservation
+    var staleRes = emailTestKit.call(email -> email.expire(new UniqueEmailEntity.ExpireReservation(reservedAt - 1)));
+    assertFalse(staleRes.getReply().reclaimed());
+    assertEquals(UniqueEmailEntity.Status.RESERVED, emailTestKit.getState().status());
+
+    var expireRes = emailTestKit.call(email -> email.expire(new UniqueEmailEntity.ExpireReservation(reservedAt)));
+    assertTrue(expireRes.getReply().reclaimed());
+    assertEquals(UniqueEmailEntity.Status.NOT_USED, emailTestKit.getState().status());
+  }
+
+  @Test
+  public void neverExpireConfirmedAddress() {
+    var emailTestKit = ValueEntityTestKit.of(address, UniqueEmailEntity::new);
+    emailTestKit.call(email -> email.reserve(new UniqueEmailEntity.ReserveEmail(address, "001")));
+    var reservedAt = emailTestKit.getState().reservedAt().get().toEpochMilli();
+    emailTestKit.call(email -> email.confirm(new UniqueEmailEntity.ConfirmEmail("001")));
+
+    var expireRes = emailTestKit.call(email -> email.expire(new UniqueEmailEntity.ExpireReservation(reservedAt)));
+    assertFalse(expireRes.getReply().reclaimed());
+    assertEquals(UniqueEmailEntity.Status.CONFIRMED, emailTestKit.getState().status());
+  }
+
+  @Test
+  public void unReserveOwnReservation() {
+    var emailTestKit = ValueEntityTestKit.of(address, UniqueEmailEntity::new);
+    emailTestKit.call(email -> email.reserve(new UniqueEmailEntity.ReserveEmail(address, "001")));
+
+    var unReserveRes = emailTestKit.call(email -> email.unReserve(new UniqueEmailEntity.UnReserveEmail("001")));
+    assertTrue(unReserveRes.stateWasUpdated());
+    assertEquals(UniqueEmailEntity.Status.NOT_USED, emailTestKit.getState().status());
+  }
+
+  @Test
+  public void ignoreUnReserveOfSomeoneElsesReservation() {
+    var emailTestKit = ValueEntityTestKit.of(address, UniqueEmailEntity::new);
+    // the reservation of 001 expired and 002 reserved the address in the meantime
+    emailTestKit.call(email -> email.reserve(new UniqueEmailEntity.ReserveEmail(address, "002")));
+
+    var unReserveRes = emailTestKit.call(email -> email.unReserve(new UniqueEmailEntity.UnReserveEmail("001")));
+    assertFalse(unReserveRes.stateWasUpdated());
+    assertEquals(UniqueEmailEntity.Status.RESERVED, emailTestKit.getState().status());
+    assertEquals(Optional.of("002"), emailTestKit.getState().ownerId());
+  }
+}
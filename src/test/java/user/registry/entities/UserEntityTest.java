@@ -2,9 +2,14 @@ package user.registry.entities;
 
 import org.junit.jupiter.api.Test;
 
+import kalix.javasdk.JsonSupport;
 import kalix.javasdk.testkit.EventSourcedTestKit;
 
+import java.util.Optional;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class UserEntityTest {
@@ -22,6 +27,21 @@ public class UserEntityTest {
     var updateRes = userTestKit.call(userService -> userService.changeEmail(new UserEntity.ChangeEmail("john.doe@acme.com")));
     var emailChanged = updateRes.getNextEventOfType(UserEntity.EmailAssigned.class);
     assertEquals("john.doe@acme.com", emailChanged.newEmail());
+    assertEquals(Optional.of("john@acme.com"), emailChanged.previousEmail());
+  }
+
+  @Test
+  public void removeUser() {
+    var userTestKit = EventSourcedTestKit.of(__ -> new UserEntity());
+    userTestKit.call(userService -> userService.createUser(new UserEntity.Create("John", "Belgium", "john@acme.com")));
+
+    var removeRes = userTestKit.call(UserEntity::removeUser);
+    var removed = removeRes.getNextEventOfType(UserEntity.UserWasRemoved.class);
+    assertEquals("john@acme.com", removed.email());
+
+    var getRes = userTestKit.call(UserEntity::getState);
+    assertTrue(getRes.isError());
+    assertEquals("User not found", getRes.getError());
   }
 
   @Test
@@ -32,4 +52,71 @@ public class UserEntityTest {
     assertTrue(updateRes.isError());
     assertEquals("User not found", updateRes.getError());
   }
+
+  @Test
+  public void provisionalUserIsActivated() {
+    var userTestKit = EventSourcedTestKit.of(__ -> new UserEntity());
+
+    var creationRes = userTestKit.call(userService -> userService.createProvisionalUser(new UserEntity.Create("John", "Belgium", "john@acme.com")));
+    creationRes.getNextEventOfType(UserEntity.ProvisionalUserCreated.class);
+    assertEquals(1, creationRes.getAllEvents().size());
+    assertTrue(userTestKit.call(UserEntity::getState).isError());
+
+    var activationRes = userTestKit.call(UserEntity::activateUser);
+    var created = activationRes.getNextEventOfType(UserEntity.UserWasCreated.class);
+    assertEquals("John", created.name());
+    assertEquals("john@acme.com", activationRes.getNextEventOfType(UserEntity.EmailAssigned.class).newEmail());
+    assertEquals("john@acme.com", userTestKit.call(UserEntity::getState).getReply().email());
+
+    // activating again changes nothing
+    assertFalse(userTestKit.call(UserEntity::activateUser).didEmitEvents());
+  }
+
+  @Test
+  public void provisionalUserIsDiscardedWithoutRemovalEvent() {
+    var userTestKit = EventSourcedTestKit.of(__ -> new UserEntity());
+    userTestKit.call(userService -> userService.createProvisionalUser(new UserEntity.Create("John", "Belgium", "john@acme.com")));
+
+    var removeRes = userTestKit.call(UserEntity::removeUser);
+    removeRes.getNextEventOfType(UserEntity.ProvisionalUserDiscarded.class);
+    assertNull(userTestKit.getState());
+  }
+
+  @Test
+  public void creationActivatesProvisionalUserWithSameData() {
+    var userTestKit = EventSourcedTestKit.of(__ -> new UserEntity());
+    var cmd = new UserEntity.Create("John", "Belgium", "john@acme.com");
+    userTestKit.call(userService -> userService.createProvisionalUser(cmd));
+
+    var creationRes = userTestKit.call(userService -> userService.createUser(cmd));
+    creationRes.getNextEventOfType(UserEntity.UserWasCreated.class);
+    assertFalse(userTestKit.getState().provisional());
+  }
+
+  @Test
+  public void creationIsIdempotentForTheSameCommand() {
+    var userTestKit = EventSourcedTestKit.of(__ -> new UserEntity());
+    var cmd = new UserEntity.Create("John", "Belgium", "john@acme.com");
+    userTestKit.call(userService -> userService.createUser(cmd));
+
+    var retryRes = userTestKit.call(userService -> userService.createUser(cmd));
+    assertTrue(retryRes.isReply());
+    assertFalse(retryRes.didEmitEvents());
+
+    var otherRes = userTestKit.call(userService -> userService.createUser(new UserEntity.Create("Jane", "Belgium", "john@acme.com")));
+    assertTrue(otherRes.isError());
+    assertEquals("User already created", otherRes.getError());
+  }
+
+  @Test
+  public void readSnapshotWrittenBeforeProvisionalUsers() throws Exception {
+    var json = """
+      {"name":"John","country":"Belgium","email":"john@acme.com"}
+      """;
+
+    var user = JsonSupport.getObjectMapper().readValue(json, UserEntity.User.class);
+
+    assertEquals("john@acme.com", user.email());
+    assertFalse(user.provisional());
+  }
 }
@@ -0,0 +1,73 @@
+package user.registry.faults;
+
+import com.typesafe.config.ConfigFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import user.registry.Settings;
+import user.registry.metrics.RegistryMetrics;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FaultInjectorTest {
+
+  private final Settings settings = Settings.load(ConfigFactory.load());
+
+  @Test
+  public void passThroughWhenDisabled() {
+    var faults = new FaultInjector(settings, new RegistryMetrics(new SimpleMeterRegistry()));
+    faults.update(new Settings.Faults(false, Map.of("create-user", fault(1.0, 0, 0))));
+
+    var result = faults.inject("create-user", () -> CompletableFuture.completedFuture("done"));
+
+    assertEquals("done", result.toCompletableFuture().join());
+  }
+
+  @Test
+  public void failWithoutCallingTheTarget() {
+    var faults = new FaultInjector(settings, new RegistryMetrics(new SimpleMeterRegistry()));
+    faults.update(new Settings.Faults(true, Map.of(FaultInjector.USER_ENTITY, fault(1.0, 10, 10))));
+    var calls = new AtomicInteger();
+
+    var result = faults.inject("create-user", FaultInjector.USER_ENTITY, () -> {
+      calls.incrementAndGet();
+      return CompletableFuture.completedFuture("done");
+    });
+
+    var error = assertThrows(CompletionException.class, () -> result.toCompletableFuture().join());
+    assertInstanceOf(FaultInjector.InjectedFault.class, error.getCause());
+    assertEquals(0, calls.get());
+  }
+
+  @Test
+  public void latencyPercentiles() {
+    var fault = fault(0, 20, 500);
+    var random = new Random(42);
+
+    var samples =
+      IntStream.range(0, 10000)
+        .mapToLong(__ -> FaultInjector.latency(fault, random).toMillis())
+        .sorted()
+        .toArray();
+
+    assertEquals(20, samples[5000], 2);
+    assertEquals(500, samples[9900], 75);
+  }
+
+  @Test
+  public void constantLatencyWithoutTail() {
+    assertEquals(Duration.ofMillis(20), FaultInjector.latency(fault(0, 20, 0), new Random()));
+    assertEquals(Duration.ZERO, FaultInjector.latency(fault(0, 0, 100), new Random()));
+  }
+
+  private static Settings.Fault fault(double errorRate, long latencyMillis, long p99Millis) {
+    return new Settings.Fault(errorRate, Duration.ofMillis(latencyMillis), Duration.ofMillis(p99Millis));
+  }
+}
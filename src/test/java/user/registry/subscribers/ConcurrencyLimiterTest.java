@@ -0,0 +1,37 @@
+package user.registry.subscribers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrencyLimiterTest {
+
+  @Test
+  public void queueCallsBeyondTheLimit() {
+    var limiter = new ConcurrencyLimiter("test", 1, 1);
+    var first = new CompletableFuture<String>();
+    var second = new CompletableFuture<String>();
+
+    var firstResult = limiter.submit(() -> first);
+    var secondResult = limiter.submit(() -> second);
+    assertEquals(1, limiter.inFlight());
+    assertEquals(1, limiter.queued());
+
+    var rejected = limiter.submit(() -> CompletableFuture.completedFuture("third"));
+    var error = assertThrows(CompletionException.class, () -> rejected.toCompletableFuture().join());
+    assertInstanceOf(RejectedExecutionException.class, error.getCause());
+
+    first.complete("first");
+    assertEquals("first", firstResult.toCompletableFuture().join());
+    assertEquals(1, limiter.inFlight());
+    assertEquals(0, limiter.queued());
+
+    second.completeExceptionally(new RuntimeException("boom"));
+    assertThrows(CompletionException.class, () -> secondResult.toCompletableFuture().join());
+    assertEquals(0, limiter.inFlight());
+  }
+}
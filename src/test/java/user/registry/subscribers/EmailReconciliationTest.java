@@ -0,0 +1,48 @@
+package user.registry.subscribers;
+
+import org.junit.jupiter.api.Test;
+import user.registry.entities.UniqueEmailEntity;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EmailReconciliationTest {
+
+  private final String newEmail = "john.doe@acme.com";
+  private final String oldEmail = "john@acme.com";
+
+  @Test
+  public void conflictOnlyWithAnotherOwner() {
+    var takenByJane = confirmed(newEmail, "002");
+    assertTrue(EmailReconciliation.isOwnedBySomeoneElse(takenByJane, "001"));
+
+    var ownedByJohn = confirmed(newEmail, "001");
+    assertFalse(EmailReconciliation.isOwnedBySomeoneElse(ownedByJohn, "001"));
+
+    // the assignment failed for another reason, it's retried
+    var free = UniqueEmailEntity.UniqueEmail.notUsed(newEmail);
+    assertFalse(EmailReconciliation.isOwnedBySomeoneElse(free, "001"));
+  }
+
+  @Test
+  public void revertOnlyWhileTheConflictingAddressIsCurrent() {
+    assertTrue(EmailReconciliation.shouldRevert(newEmail, newEmail));
+    // changed again since, or removed
+    assertFalse(EmailReconciliation.shouldRevert(newEmail, "johnny@acme.com"));
+    assertFalse(EmailReconciliation.shouldRevert(newEmail, null));
+  }
+
+  @Test
+  public void releaseUnlessTheChangeWasReverted() {
+    assertTrue(EmailReconciliation.shouldRelease(oldEmail, newEmail));
+    assertTrue(EmailReconciliation.shouldRelease(oldEmail, null));
+    assertFalse(EmailReconciliation.shouldRelease(oldEmail, oldEmail));
+  }
+
+  private static UniqueEmailEntity.UniqueEmail confirmed(String address, String ownerId) {
+    return new UniqueEmailEntity.UniqueEmail(address, UniqueEmailEntity.Status.CONFIRMED, Optional.of(ownerId), Optional.of(Instant.now()));
+  }
+}